@@ -1,12 +1,17 @@
+import csv
 import os
 import matplotlib.pyplot as plt
 import numpy as np
 
+MODES = ["sequential", "parallel", "batched", "pipelined", "distributed", "socket"]
+
 def read_file(file_path):
-    with open(file_path, 'r') as file:
-        lines = file.readlines()
-        reviews_per_second = [int(line.split(":")[1].strip()) for line in lines]
-        return reviews_per_second
+    with open(file_path, 'r', newline='') as file:
+        rows = list(csv.DictReader(file))
+        return rows
+
+def column(rows, name):
+    return [float(row[name]) for row in rows if row.get(name) not in (None, '')]
 
 def compute_statistics(data):
     average = np.mean(data)
@@ -16,42 +21,53 @@ def compute_statistics(data):
     std_dev = np.std(data)
     return average, median, minimum, maximum, std_dev
 
-def plot_results(sequential_data, parallel_data, distributed_data):
-    plt.figure(figsize=(10, 6))
-    plt.plot(sequential_data, label='Sequential', marker='o')
-    plt.plot(parallel_data, label='Parallel', marker='o')
-    plt.plot(distributed_data, label='Distributed', marker='o')
-    plt.xlabel('Time (seconds)')
-    plt.ylabel('Reviews processed per second')
-    plt.title('Reviews Processed per Second Over Time')
-    plt.legend()
-    plt.grid(True)
+def plot_results(results):
+    fig, (throughput, latency) = plt.subplots(2, 1, figsize=(10, 10))
+    for mode, rows in results.items():
+        throughput.plot(column(rows, 'reviews'), label=mode.capitalize(), marker='o')
+        latency.plot(np.array(column(rows, 'e2e_p99_us')) / 1000, label=mode.capitalize(), marker='o')
+    throughput.set_xlabel('Time (seconds)')
+    throughput.set_ylabel('Reviews processed per second')
+    throughput.set_title('Reviews Processed per Second Over Time')
+    throughput.legend()
+    throughput.grid(True)
+    latency.set_xlabel('Time (seconds)')
+    latency.set_ylabel('End-to-end p99 (ms)')
+    latency.set_title('End-to-end Latency Over Time')
+    latency.legend()
+    latency.grid(True)
+    plt.tight_layout()
     plt.show()
 
 if __name__ == "__main__":
-    
+
     script_dir = os.path.dirname(os.path.abspath(__file__))
-    sequential_file = os.path.join(script_dir, "sequential_review_counts.txt")
-    parallel_file = os.path.join(script_dir, "parallel_review_counts.txt")
-    distributed_file = os.path.join(script_dir, "distributed_review_counts.txt")
-
-    sequential_data = read_file(sequential_file)
-    parallel_data = read_file(parallel_file)
-    distributed_data = read_file(distributed_file)
-
-    # Compute statistics
-    seq_avg, seq_median, seq_min, seq_max, seq_std = compute_statistics(sequential_data)
-    par_avg, par_median, par_min, par_max, par_std = compute_statistics(parallel_data)
-    dist_avg, dist_median, dist_min, dist_max, dist_std = compute_statistics(distributed_data)
-
-    # Print statistics
-    print("Sequential Data Statistics:")
-    print(f"Average: {seq_avg}, Median: {seq_median}, Min: {seq_min}, Max: {seq_max}, Std Dev: {seq_std}")
-    
-    print("\nParallel Data Statistics:")
-    print(f"Average: {par_avg}, Median: {par_median}, Min: {par_min}, Max: {par_max}, Std Dev: {par_std}")
-
-    print("\nDistributed Data Statistics:")
-    print(f"Average: {dist_avg}, Median: {dist_median}, Min: {dist_min}, Max: {dist_max}, Std Dev: {dist_std}")
-
-    plot_results(sequential_data, parallel_data, distributed_data)
+
+    # Read the metrics of every mode that was run
+    results = {}
+    for mode in MODES:
+        metrics_file = os.path.join(script_dir, mode + "_metrics.csv")
+        if os.path.exists(metrics_file):
+            rows = read_file(metrics_file)
+            if rows:
+                results[mode] = rows
+
+    # Compute and print statistics
+    for mode, rows in results.items():
+        average, median, minimum, maximum, std_dev = compute_statistics(column(rows, 'reviews'))
+        print(f"{mode.capitalize()} Data Statistics:")
+        print(f"Average: {average}, Median: {median}, Min: {minimum}, Max: {maximum}, Std Dev: {std_dev}")
+        # Median over the seconds of each latency percentile, in milliseconds
+        for stage in ("extract", "annotate", "e2e"):
+            p50 = np.median(column(rows, stage + "_p50_us")) / 1000
+            p99 = np.median(column(rows, stage + "_p99_us")) / 1000
+            p999 = np.median(column(rows, stage + "_p999_us")) / 1000
+            print(f"{stage}: p50 {p50:.2f} ms, p99 {p99:.2f} ms, p999 {p999:.2f} ms")
+        reviews = sum(column(rows, 'reviews'))
+        duplicates = sum(column(rows, 'duplicates'))
+        if reviews + duplicates > 0:
+            print(f"Duplicates skipped: {duplicates:.0f} ({100 * duplicates / (reviews + duplicates):.1f}%)")
+        print(f"GC pauses: {sum(column(rows, 'gc_pauses')):.0f}, total {sum(column(rows, 'gc_pause_ms')):.1f} ms")
+        print()
+
+    plot_results(results)
@@ -0,0 +1,61 @@
+package com.prog3.sentimentanalysis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Cost of getting the review out of a server message, for short and long reviews.
+* The messages are generated once, every call parses the next one of them.
+* */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonParserBenchmark {
+    private static final String TOPIC = "music";
+    private static final int MESSAGES = 1024;
+
+    @Param({"20", "100", "400"})
+    public int words;
+
+    private String[] messages;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        SyntheticReviewGenerator generator = new SyntheticReviewGenerator(42);
+        messages = new String[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            messages[i] = SyntheticReviewGenerator.toMessage(TOPIC, generator.nextReviewJson(words));
+        }
+    }
+
+    @Benchmark
+    public String extractReviewText() {
+        return JsonParser.extractReviewText(nextMessage(), TOPIC);
+    }
+
+    @Benchmark
+    public JsonParser.Review extractReview() {
+        return JsonParser.extractReview(nextMessage(), TOPIC);
+    }
+
+    private String nextMessage() {
+        String message = messages[next];
+        next = (next + 1) & (MESSAGES - 1);
+        return message;
+    }
+}
@@ -0,0 +1,114 @@
+package com.prog3.sentimentanalysis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Reviews per second of each mode on a fixed corpus of server messages, without the WebSocket server.
+* One invocation pushes the whole corpus through the mode and waits until every review is analyzed,
+* so the score is the in-process throughput, independent of how fast a server sends.
+* */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgs = {"-Xmx6g"})
+public class ModeThroughputBenchmark {
+    private static final String TOPIC = "music";
+    private static final int CORPUS_SIZE = 200;
+
+    @Param({"sequential", "parallel", "batched", "pipelined"})
+    public String mode;
+
+    // Workers of the parallel and pipelined modes, annotator threads of the batched mode
+    @Param({"4"})
+    public int threads;
+
+    private final List<String> messages = new ArrayList<>();
+    private SentimentAnalyzer analyzer;
+    private ParallelSentimentEngine parallelEngine;
+    private MicroBatcher microBatcher;
+    private StagedPipeline stagedPipeline;
+    // Counted down once for every analyzed review of the current invocation
+    private volatile CountDownLatch remaining;
+
+    @Setup
+    public void setUp() {
+        // Every invocation sends the same corpus again, it must be analyzed again and not cached or filtered out
+        SentimentCache.configureShared(0);
+        DuplicateFilter.configureShared(0);
+        SyntheticReviewGenerator generator = new SyntheticReviewGenerator(42);
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            int words = generator.nextWordCount(SyntheticReviewGenerator.LengthDistribution.LOGNORMAL, 60, 300);
+            messages.add(SyntheticReviewGenerator.toMessage(TOPIC, generator.nextReviewJson(words)));
+        }
+        switch (mode) {
+            case "parallel" -> {
+                parallelEngine = new ParallelSentimentEngine(threads, CORPUS_SIZE, LoadShedder.Policy.BLOCK, 1,
+                        SentimentAnalyzer::new, (review, sentiment) -> remaining.countDown());
+                parallelEngine.start();
+            }
+            case "batched" -> {
+                microBatcher = new MicroBatcher(new SentimentAnalyzer(), MicroBatcher.DEFAULT_BATCH_SIZE,
+                        MicroBatcher.DEFAULT_MAX_WAIT_MILLIS, threads, CORPUS_SIZE, LoadShedder.Policy.BLOCK, 1);
+                microBatcher.start();
+            }
+            case "pipelined" -> {
+                StagedPipeline.Config config = new StagedPipeline.Config(1024, RingBuffer.WaitStrategy.BLOCKING, 1,
+                        threads, 1, false, LoadShedder.Policy.BLOCK, 1);
+                stagedPipeline = new StagedPipeline(config, TOPIC, SentimentAnalyzer::new, event -> remaining.countDown());
+                stagedPipeline.start();
+            }
+            default -> analyzer = new SentimentAnalyzer();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (parallelEngine != null) {
+            parallelEngine.shutdown();
+        }
+        if (microBatcher != null) {
+            microBatcher.shutdown();
+        }
+        if (stagedPipeline != null) {
+            stagedPipeline.shutdown();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public void analyzeCorpus() throws InterruptedException {
+        remaining = new CountDownLatch(CORPUS_SIZE);
+        for (String message : messages) {
+            switch (mode) {
+                case "parallel" -> parallelEngine.submit(JsonParser.extractReviewText(message, TOPIC));
+                case "batched" -> microBatcher.submit(JsonParser.extractReviewText(message, TOPIC))
+                        .whenComplete((sentiment, error) -> remaining.countDown());
+                case "pipelined" -> stagedPipeline.publish(message);
+                default -> {
+                    analyzer.analyzeSentiment(JsonParser.extractReviewText(message, TOPIC));
+                    remaining.countDown();
+                }
+            }
+        }
+        remaining.await();
+    }
+}
@@ -0,0 +1,38 @@
+package com.prog3.sentimentanalysis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Cost of creating a SentimentAnalyzer, which builds a CoreNLP pipeline.
+* Every fork starts a fresh JVM, so the first iteration includes loading the models,
+* the later ones show what another analyzer costs once SharedPipelines holds them.
+* */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 5)
+@Fork(value = 3, jvmArgs = {"-Xmx4g"})
+public class PipelineConstructionBenchmark {
+
+    @Setup
+    public void setUp() {
+        SentimentCache.configureShared(0);
+    }
+
+    @Benchmark
+    public SentimentAnalyzer createAnalyzer() {
+        return new SentimentAnalyzer();
+    }
+}
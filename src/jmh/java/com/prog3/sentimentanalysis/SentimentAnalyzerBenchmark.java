@@ -0,0 +1,65 @@
+package com.prog3.sentimentanalysis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Time to analyze one review by its length in words, for each analyzer.
+* The cache is disabled and the corpus is larger than any warm-up could memorize,
+* so every call goes through the analyzer itself.
+* */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class SentimentAnalyzerBenchmark {
+    private static final int REVIEWS = 256;
+
+    // Length buckets of short, typical and long reviews
+    @Param({"10", "50", "200"})
+    public int words;
+
+    @Param({"full", "tiered", "sentences"})
+    public String analyzer;
+
+    private SentimentAnalyzer sentimentAnalyzer;
+    private String[] reviews;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        SentimentCache.configureShared(0);
+        sentimentAnalyzer = switch (analyzer) {
+            case "tiered" -> new TieredSentimentAnalyzer(TieredSentimentAnalyzer.DEFAULT_THRESHOLD,
+                    new TieredSentimentAnalyzer.TierStats());
+            case "sentences" -> new SentenceParallelAnalyzer(new ForkJoinPool());
+            default -> new SentimentAnalyzer();
+        };
+        SyntheticReviewGenerator generator = new SyntheticReviewGenerator(42);
+        reviews = new String[REVIEWS];
+        for (int i = 0; i < REVIEWS; i++) {
+            reviews[i] = generator.nextReviewText(words);
+        }
+    }
+
+    @Benchmark
+    public String analyzeSentiment() {
+        String review = reviews[next];
+        next = (next + 1) % REVIEWS;
+        return sentimentAnalyzer.analyzeSentiment(review);
+    }
+}
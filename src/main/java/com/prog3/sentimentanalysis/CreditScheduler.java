@@ -0,0 +1,110 @@
+package com.prog3.sentimentanalysis;
+
+/**
+ *  Decides which worker gets the next batch of reviews in the distributed mode, by the credit the workers give.
+* A worker first advertises how many reviews it can hold, and returns credit for every review it has analyzed.
+* The dispatcher only sends to a worker with credit, and takes the credit of the reviews it sends, so a worker
+* that is slow, stuck on a long review or on a slower node simply gets less work and the others get more.
+* The worker with the most credit is chosen, ties go round-robin. When no worker has credit the dispatcher
+* waits, the reviews stay in the master's queue and its overload policy applies.
+* Workers are numbered from 1 like the MPI ranks, the scheduler itself knows nothing about the transport.
+* A worker that goes away is removed with its credit, and starts again from its capacity when it comes back.
+* */
+public class CreditScheduler {
+
+    /**
+     *  Reviews the dispatcher may send to a worker.
+    * */
+    public record Grant(int worker, int reviews) {
+    }
+
+    private final int[] credits;
+    // Reviews every worker advertised it can hold, 0 until its first credit arrives
+    private final int[] capacities;
+    private int nextWorker = 1;
+    // Grant the dispatcher has not released yet, it is invalid once its worker was removed
+    private int grantWorker;
+    private int grantReviews;
+    private boolean grantValid;
+
+    public CreditScheduler(int workers) {
+        credits = new int[workers + 1];
+        capacities = new int[workers + 1];
+    }
+
+    // Credit from a worker, the first credit of a worker is the number of reviews it can hold
+    public synchronized void addCredit(int worker, int reviews) {
+        if (capacities[worker] == 0) {
+            capacities[worker] = reviews;
+        }
+        credits[worker] += reviews;
+        notifyAll();
+    }
+
+    // Wait for a worker with credit and take the credit of up to the wanted number of reviews
+    public synchronized Grant acquire(int wanted) throws InterruptedException {
+        int worker;
+        while ((worker = workerWithMostCredit()) == 0) {
+            wait();
+        }
+        int reviews = Math.min(wanted, credits[worker]);
+        credits[worker] -= reviews;
+        nextWorker = worker % (credits.length - 1) + 1;
+        grantWorker = worker;
+        grantReviews = reviews;
+        grantValid = true;
+        return new Grant(worker, reviews);
+    }
+
+    // Give back the part of a grant that was not sent, the dispatcher releases a grant before it acquires the next.
+    // Returns false if the worker was removed while the grant was open, its sent reviews were not counted then
+    public synchronized boolean release(Grant grant, int sent) {
+        boolean valid = grantValid || grant.worker() != grantWorker;
+        grantValid = false;
+        if (valid && sent < grant.reviews()) {
+            credits[grant.worker()] += grant.reviews() - sent;
+            notifyAll();
+        }
+        return valid;
+    }
+
+    // Reviews sent to the workers that they have not finished yet
+    public synchronized int getInFlight() {
+        int inFlight = 0;
+        for (int worker = 1; worker < credits.length; worker++) {
+            inFlight += capacities[worker] - credits[worker];
+        }
+        return inFlight;
+    }
+
+    // Forget a worker that went away, returns the reviews it was sent and had not finished.
+    // Its next credit is its capacity again
+    public synchronized int removeWorker(int worker) {
+        int inFlight = capacities[worker] - credits[worker];
+        if (grantValid && grantWorker == worker) {
+            // The reviews of the open grant were not sent yet
+            inFlight -= grantReviews;
+            grantValid = false;
+        }
+        capacities[worker] = 0;
+        credits[worker] = 0;
+        return Math.max(inFlight, 0);
+    }
+
+    public synchronized int getCredit(int worker) {
+        return credits[worker];
+    }
+
+    // Worker with the most credit, searching from the one after the last choice, 0 if none has credit
+    private int workerWithMostCredit() {
+        int workers = credits.length - 1;
+        int best = 0;
+        for (int i = 0; i < workers; i++) {
+            int worker = (nextWorker - 1 + i) % workers + 1;
+            if (credits[worker] > credits[best]) {
+                best = worker;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,145 @@
+package com.prog3.sentimentanalysis;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *  Options of the distributed implementation, the same on every transport.
+* The master and the workers of the MPI and the socket transport read them from the same command line arguments,
+* options of one transport only are read by its own application.
+* */
+public class DistributedConfig {
+    // Valid topic from command arguments
+    String topic = null;
+    // Topics with their share of the workers, from --topics or the single --topic
+    List<WeightedFairQueue.Lane> topicLanes;
+    // Server URI or "file:" path the reviews are read from, and how a file is replayed
+    String source = ReviewSource.DEFAULT_SERVER_URI;
+    FileReviewSource.Replay replay = FileReviewSource.Replay.FAST;
+    // File the messages from the server are recorded to, null if they are not recorded
+    Path recordFile;
+    // Capacity of every topic lane of the queue of reviews waiting to be sent to a worker
+    int queueCapacity = 1024;
+    // Decides what happens to new reviews when the queue is full
+    LoadShedder.Policy overloadPolicy = LoadShedder.Policy.BLOCK;
+    double sampleRate = LoadShedder.DEFAULT_SAMPLE_RATE;
+    // Port of the local metrics endpoint of the master, 0 if it is not started
+    int metricsPort = 0;
+    // Analyzer of the workers, "full" for the CoreNLP pipeline, "tiered" for the lexicon fast path
+    // or "sentences" to score all sentences of a review in parallel
+    String analyzerType = "full";
+    // Number of threads that score the sentences of a review in parallel
+    int sentenceThreads = Runtime.getRuntime().availableProcessors();
+    // Pool of those threads, shared by every analyzer of the process and created with the first one
+    private ForkJoinPool sentencePool;
+    // Confidence the lexicon needs before a review skips the full parse in the tiered analyzer
+    double tierThreshold = TieredSentimentAnalyzer.DEFAULT_THRESHOLD;
+    // Times every worker analyzes the bundled corpus before it starts counting
+    int warmupRounds = Warmup.DEFAULT_ROUNDS;
+    // Most reviews the master packs into one message, a batch only takes the reviews that are already waiting
+    int batchSize = 32;
+    // Reviews a worker can hold, the master only sends it reviews it has credit for, 0 for two full batches
+    int workerCredit = 0;
+    // Analysis threads of every worker, so one worker per node can use all of its cores
+    int workerThreads = 1;
+    // A worker whose statistics do not arrive for this long is reported as stalled
+    long stallMillis = 5000;
+
+    // Read the options from the command line arguments
+    public static DistributedConfig parse(String[] args) {
+        DistributedConfig config = new DistributedConfig();
+        for (String arg : args) {
+            if (arg.startsWith("--topic=")) {
+                config.topic = arg.substring(8).toLowerCase();
+            } else if (arg.startsWith("--topics=")) {
+                config.topicLanes = WeightedFairQueue.Lane.parseList(arg.substring(9));
+            } else if (arg.startsWith("--cache-mb=")) {
+                // Size of the sentiment cache of every worker, 0 disables it
+                SentimentCache.configureShared(Long.parseLong(arg.substring(11)) * 1024L * 1024L);
+            } else if (arg.startsWith("--dedup-mb=")) {
+                // Size of the duplicate filter of the master, 0 disables it
+                DuplicateFilter.configureShared(Long.parseLong(arg.substring(11)) * 1024L * 1024L);
+            } else if (arg.startsWith("--analyzer=")) {
+                config.analyzerType = arg.substring(11).toLowerCase();
+            } else if (arg.startsWith("--tier-threshold=")) {
+                config.tierThreshold = Double.parseDouble(arg.substring(17));
+            } else if (arg.startsWith("--queue-size=")) {
+                config.queueCapacity = Integer.parseInt(arg.substring(13));
+            } else if (arg.startsWith("--overload=")) {
+                config.overloadPolicy = LoadShedder.Policy.parse(arg.substring(11));
+            } else if (arg.startsWith("--sample-rate=")) {
+                config.sampleRate = Double.parseDouble(arg.substring(14));
+            } else if (arg.startsWith("--sentence-threads=")) {
+                config.sentenceThreads = Integer.parseInt(arg.substring(19));
+            } else if (arg.startsWith("--source=")) {
+                config.source = arg.substring(9);
+            } else if (arg.startsWith("--replay=")) {
+                FileReviewSource.Replay replay = config.replay;
+                config.replay = new FileReviewSource.Replay(FileReviewSource.Mode.parse(arg.substring(9)), replay.rate(), replay.speed(), replay.loop());
+            } else if (arg.startsWith("--replay-rate=")) {
+                FileReviewSource.Replay replay = config.replay;
+                config.replay = new FileReviewSource.Replay(replay.mode(), Double.parseDouble(arg.substring(14)), replay.speed(), replay.loop());
+            } else if (arg.startsWith("--replay-speed=")) {
+                FileReviewSource.Replay replay = config.replay;
+                config.replay = new FileReviewSource.Replay(replay.mode(), replay.rate(), Double.parseDouble(arg.substring(15)), replay.loop());
+            } else if (arg.startsWith("--replay-loop=")) {
+                FileReviewSource.Replay replay = config.replay;
+                config.replay = new FileReviewSource.Replay(replay.mode(), replay.rate(), replay.speed(), Boolean.parseBoolean(arg.substring(14)));
+            } else if (arg.startsWith("--record=")) {
+                config.recordFile = Path.of(arg.substring(9));
+            } else if (arg.startsWith("--metrics-port=")) {
+                config.metricsPort = Integer.parseInt(arg.substring(15));
+            } else if (arg.startsWith("--warmup-rounds=")) {
+                config.warmupRounds = Integer.parseInt(arg.substring(16));
+            } else if (arg.startsWith("--batch-size=")) {
+                config.batchSize = Math.max(1, Integer.parseInt(arg.substring(13)));
+            } else if (arg.startsWith("--credit=")) {
+                config.workerCredit = Integer.parseInt(arg.substring(9));
+            } else if (arg.startsWith("--worker-threads=")) {
+                config.workerThreads = Math.max(1, Integer.parseInt(arg.substring(17)));
+            } else if (arg.startsWith("--stall-ms=")) {
+                config.stallMillis = Long.parseLong(arg.substring(11));
+            }
+        }
+        return config;
+    }
+
+    // Turn a single --topic into a list of one topic, returns false if no topic was given
+    public boolean resolveTopics() {
+        if (topic == null && (topicLanes == null || topicLanes.isEmpty())) {
+            System.err.println("Please specify the topic using the --topic=<topic> argument (change <topic> for music, toys, pet-supplies, automotive or sport)"
+                    + " or several topics with --topics=<topic>[:<weight>],...");
+            return false;
+        }
+        if (topicLanes == null || topicLanes.isEmpty()) {
+            topicLanes = List.of(new WeightedFairQueue.Lane(topic, 1));
+        }
+        topic = topicLanes.get(0).name();
+        return true;
+    }
+
+    // Reviews a worker can hold, the first credit it gives the master
+    public int workerCapacity() {
+        return workerCredit > 0 ? workerCredit : 2 * Math.max(batchSize, workerThreads);
+    }
+
+    // Create the analyzer chosen on the command line
+    public SentimentAnalyzer createAnalyzer(TieredSentimentAnalyzer.TierStats tierStats) {
+        if (analyzerType.equals("tiered")) {
+            return new TieredSentimentAnalyzer(tierThreshold, tierStats);
+        } else if (analyzerType.equals("sentences")) {
+            return new SentenceParallelAnalyzer(sentencePool());
+        }
+        return new SentimentAnalyzer();
+    }
+
+    // The analysis threads of a worker and its warm-up all score their sentences on one pool, so a node
+    // runs sentenceThreads of them and not that many for every analyzer
+    private synchronized ForkJoinPool sentencePool() {
+        if (sentencePool == null) {
+            sentencePool = new ForkJoinPool(sentenceThreads);
+        }
+        return sentencePool;
+    }
+}
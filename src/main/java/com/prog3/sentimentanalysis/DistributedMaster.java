@@ -0,0 +1,385 @@
+package com.prog3.sentimentanalysis;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *  Master of the distributed implementation, on any transport.
+* It receives the reviews, queues them in the lanes of their topics, packs the reviews that are waiting into a
+* ReviewBatch for the worker with the most credit and reports the statistics the workers send, once per second.
+* How the batches reach the workers and how their credit and statistics come back is left to the Transport,
+* which calls the WorkerEvents of the master from its own threads. Workers are numbered from 1.
+* The end-to-end latency of a review is measured on the master's clock, from its receipt until the credit for it
+* comes back, taking the reviews of a worker in the order they were sent to it.
+* */
+public class DistributedMaster {
+    // Initial size of the buffers of the batches, they grow for larger batches
+    public static final int INITIAL_BUFFER_BYTES = 16 * 1024;
+    // The master reports a second this long after it ended, so the reports of the workers have arrived
+    private static final long REPORT_LAG_MILLIS = 1500;
+
+    /**
+     *  Carries the batches of the master to the workers.
+    * */
+    public interface Transport {
+        // Start delivering the credit and statistics of the workers to the master
+        void start(WorkerEvents events) throws IOException;
+
+        // A new writer for a batch
+        ReviewBatch.Writer newWriter();
+
+        // Start sending a batch to a worker without waiting, returns false if the worker cannot be reached
+        boolean send(int worker, ReviewBatch.Writer writer, int length);
+
+        // Move the writers whose batches were sent, or can no longer be sent, to the free writers
+        void reclaim(Deque<ReviewBatch.Writer> freeWriters);
+    }
+
+    /**
+     *  What the transport reports about the workers, called on the threads of the transport.
+    * */
+    public interface WorkerEvents {
+        // Credit from a worker, its first credit is the number of reviews it can hold
+        void addCredit(int worker, int reviews);
+
+        // Report of the totals of a worker, see WorkerStatsAggregator
+        void recordStats(int worker, long[] report);
+
+        // A worker connected, restarted is false when a worker that was connected before comes back
+        default void workerJoined(int worker, boolean restarted) {
+        }
+
+        // A worker cannot be reached anymore
+        default void workerLeft(int worker) {
+        }
+    }
+
+    private final DistributedConfig config;
+    private final int numWorkers;
+    private final Transport transport;
+    private final String outputFile;
+    // Bounded queue of reviews waiting to be sent to a worker, with a lane for every topic
+    private final WeightedFairQueue<QueuedReview> reviewQueue;
+    // Decides what happens to new reviews when the queue is full
+    private final LoadShedder<QueuedReview> loadShedder;
+    // Chooses the worker of every batch by the credit the workers returned
+    private final CreditScheduler creditScheduler;
+    // Builds the per-second series from the totals the workers report
+    private final WorkerStatsAggregator statsAggregator;
+    // Sequence id of the next batch to every worker, starts again when a worker restarts
+    private final AtomicLongArray batchSequences;
+    // Messages and reviews sent to the workers since the last report
+    private final AtomicLong sentMessages = new AtomicLong();
+    private final AtomicLong sentReviews = new AtomicLong();
+    // Reviews lost because their worker went away before it analyzed them
+    private final AtomicLong lostReviews = new AtomicLong();
+    // Workers that went away, they are not reported as stalled until they come back
+    private final Set<Integer> departedWorkers = ConcurrentHashMap.newKeySet();
+    // Receive times of the reviews every worker holds, for the end-to-end latency
+    private final ReceiveTimes[] receiveTimes;
+
+    public DistributedMaster(DistributedConfig config, int numWorkers, Transport transport, String outputFile) {
+        this.config = config;
+        this.numWorkers = numWorkers;
+        this.transport = transport;
+        this.outputFile = outputFile;
+        // The topics share the workers by their weights
+        this.reviewQueue = new WeightedFairQueue<>(config.topicLanes, config.queueCapacity);
+        this.loadShedder = new LoadShedder<>(config.overloadPolicy, config.sampleRate);
+        this.creditScheduler = new CreditScheduler(numWorkers);
+        this.statsAggregator = new WorkerStatsAggregator(numWorkers, config.stallMillis);
+        this.batchSequences = new AtomicLongArray(numWorkers + 1);
+        this.receiveTimes = new ReceiveTimes[numWorkers + 1];
+        for (int worker = 1; worker <= numWorkers; worker++) {
+            receiveTimes[worker] = new ReceiveTimes();
+        }
+    }
+
+    // Start the transport, the dispatcher and the source of the reviews, and report every second
+    public void start() {
+        // The master records the extraction, its queue and its GC pauses, the workers send their sentiment classes
+        PipelineMetrics metrics = PipelineMetrics.getShared();
+        metrics.registerQueue("review_queue", reviewQueue::size);
+        if (config.topicLanes.size() > 1) {
+            // The reviews of every topic and their wait until they are sent to a worker are reported on their own
+            for (WeightedFairQueue.Lane lane : config.topicLanes) {
+                metrics.registerTopic(lane.name());
+            }
+            System.out.println("Topics sharing the workers: " + config.topicLanes);
+        }
+        metrics.registerQueue("in_flight", creditScheduler::getInFlight);
+        metrics.monitorGarbageCollection();
+        MetricsLog metricsLog;
+        try {
+            metricsLog = new MetricsLog(Path.of(outputFile), metrics.csvHeader());
+            if (config.metricsPort > 0) {
+                new MetricsHttpServer(config.metricsPort, metrics);
+            }
+            transport.start(new WorkerEvents() {
+                @Override
+                public void addCredit(int worker, int reviews) {
+                    // The first credit of a worker finds no reviews, it is its capacity
+                    receiveTimes[worker].complete(reviews, PipelineMetrics.getShared());
+                    creditScheduler.addCredit(worker, reviews);
+                }
+
+                @Override
+                public void recordStats(int worker, long[] report) {
+                    statsAggregator.record(worker, report, monotonicMillis());
+                }
+
+                @Override
+                public void workerJoined(int worker, boolean restarted) {
+                    DistributedMaster.this.workerJoined(worker, restarted);
+                }
+
+                @Override
+                public void workerLeft(int worker) {
+                    DistributedMaster.this.workerLeft(worker);
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Cannot start the master: " + e.getMessage());
+            return;
+        }
+        // Reviews are sent to the workers on their own thread, so waiting for credit never stalls the WebSocket handler
+        Thread dispatcher = new Thread(this::distributeReviews, "review-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        // Connect to the server or open the recorded file, every message is handled on the thread of the source
+        ReviewSource reviewSource = ReviewSource.create(config.source,
+                config.topicLanes.stream().map(WeightedFairQueue.Lane::name).toList(), config.replay, config.recordFile);
+        reviewSource.start(this::handleMessage);
+        // The application ends with System.exit, the source is closed on the way out
+        Runtime.getRuntime().addShutdownHook(new Thread(reviewSource::close, "review-source-close"));
+        // Schedule a task to log the number of reviews processed per second
+        // The seconds are counted from the start on the master's clock, so they never drift apart
+        long startMillis = monotonicMillis();
+        long[] seconds = {0};
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+        scheduler.scheduleAtFixedRate(() -> {
+            // Take the processed reviews and their sentiment classes of every worker in the last complete second,
+            // without waiting for any of them
+            long boundary = startMillis + ++seconds[0] * 1000 - REPORT_LAG_MILLIS;
+            WorkerStatsAggregator.Second second = statsAggregator.takeSecond(boundary, monotonicMillis());
+            long totalReviewsPerSecond = second.reviews();
+            metrics.addSentimentCounts(second.sentimentCounts(), 0);
+            List<Integer> stalled = second.stalled().stream().filter(worker -> !departedWorkers.contains(worker)).toList();
+            if (!stalled.isEmpty()) {
+                System.err.println("Stalled worker processes, no statistics for more than " + config.stallMillis + " ms: "
+                        + stalled);
+            }
+
+            long dropped = loadShedder.takeDropped();
+            long shed = loadShedder.takeShed();
+            long messages = sentMessages.getAndSet(0);
+            long reviews = sentReviews.getAndSet(0);
+            System.out.println("Total reviews processed per second: " + totalReviewsPerSecond
+                    + ", dropped: " + dropped + ", shed: " + shed + ", messages sent: " + messages
+                    + String.format(" (%.1f reviews each)", messages == 0 ? 0.0 : (double) reviews / messages));
+            long lost = lostReviews.getAndSet(0);
+            if (lost > 0) {
+                System.err.println("Reviews lost with workers that went away: " + lost);
+            }
+            PipelineMetrics.Report report = metrics.takeReport(totalReviewsPerSecond, dropped, shed);
+            System.out.println(report.summary());
+            if (DuplicateFilter.getShared() != null) {
+                System.out.println(DuplicateFilter.getShared());
+            }
+            metricsLog.write(report.toCsvRow());
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    private void workerJoined(int worker, boolean restarted) {
+        departedWorkers.remove(worker);
+        if (restarted) {
+            // A new process counts its batches and totals from zero again
+            batchSequences.set(worker, 0);
+            statsAggregator.resetWorker(worker);
+        }
+        System.out.println("Worker " + worker + (restarted ? " joined" : " reconnected"));
+    }
+
+    private void workerLeft(int worker) {
+        // The worker gives its full credit again when it comes back, the reviews it held are lost
+        departedWorkers.add(worker);
+        receiveTimes[worker].clear();
+        int inFlight = creditScheduler.removeWorker(worker);
+        lostReviews.addAndGet(inFlight);
+        System.err.println("Worker " + worker + " left with " + inFlight + " reviews in flight");
+    }
+
+    // Handle the json
+    private void handleMessage(String sourceTopic, String receivedMessage) {
+        long receivedNanos = System.nanoTime();
+        String messageTopic = config.topic;
+        int lane = 0;
+        if (config.topicLanes.size() > 1) {
+            // Several topics share the workers, the topic of the message decides its lane.
+            // It comes with the message from a server, a replayed file only has it in the message
+            messageTopic = sourceTopic != null ? sourceTopic : JsonParser.messageTopic(receivedMessage);
+            lane = messageTopic != null ? reviewQueue.indexOf(messageTopic) : -1;
+            if (lane < 0) {
+                System.err.println("Message of an unknown topic: " + messageTopic);
+                return;
+            }
+        }
+        // Extract the review from the received json message, with the asin and reviewer for its fingerprint
+        JsonParser.Review review = JsonParser.extractReview(receivedMessage, messageTopic);
+        PipelineMetrics.getShared().recordExtract(receivedNanos);
+
+        // Check if the review is null before continuing
+        if (review != null) {
+            DuplicateFilter duplicateFilter = DuplicateFilter.getShared();
+            if (duplicateFilter == null || !duplicateFilter.isDuplicate(review)) {
+                // Queue the review for the dispatcher, the overload policy decides what happens when it is full
+                try {
+                    loadShedder.submit(reviewQueue.lane(lane), new QueuedReview(review.reviewText(), messageTopic, receivedNanos));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                System.out.println("Skipping processing. Duplicate review received.");
+            }
+        } else {
+            // Handle the case where extractedReview is null
+            System.out.println("Extracted review is null. Skipping processing.");
+        }
+    }
+
+    // A review waiting for a worker, with its topic and the System.nanoTime it was received at
+    private record QueuedReview(String reviewText, String topic, long receivedNanos) {
+    }
+
+    // Method to distribute the messages to worker processes, runs on the dispatcher thread
+    private void distributeReviews() {
+        // Every batch is encoded into a writer that is not being sent, writers of completed sends are reused
+        Deque<ReviewBatch.Writer> freeWriters = new ArrayDeque<>();
+        List<QueuedReview> reviews = new ArrayList<>(config.batchSize);
+        // Reviews of a batch that could not be sent, they go to the next worker before the queue
+        Deque<QueuedReview> unsent = new ArrayDeque<>();
+        // Sequence id of the next review
+        long reviewSequence = 0;
+
+        // Distribute the reviews as they arrive
+        while (true) {
+            // Wait for the next review from the queue, then for a worker with credit
+            reviews.clear();
+            CreditScheduler.Grant grant;
+            try {
+                reviews.add(unsent.isEmpty() ? reviewQueue.take() : unsent.poll());
+                grant = creditScheduler.acquire(config.batchSize);
+            } catch (InterruptedException e) {
+                return;
+            }
+            while (reviews.size() < grant.reviews() && !unsent.isEmpty()) {
+                reviews.add(unsent.poll());
+            }
+            // Add the reviews that are already waiting, so batches grow with the rate but never wait to fill
+            reviewQueue.drainTo(reviews, grant.reviews() - reviews.size());
+
+            transport.reclaim(freeWriters);
+            ReviewBatch.Writer writer = freeWriters.isEmpty() ? transport.newWriter() : freeWriters.pop();
+            long batchSequence = batchSequences.get(grant.worker());
+            writer.begin(batchSequence, reviewSequence);
+            for (QueuedReview review : reviews) {
+                writer.add(review.reviewText());
+            }
+            int length = writer.finish();
+
+            // Added before the send, so credit that comes back at once finds them
+            ReceiveTimes times = receiveTimes[grant.worker()];
+            boolean topics = config.topicLanes.size() > 1;
+            for (QueuedReview review : reviews) {
+                times.add(review.receivedNanos(), topics ? review.topic() : null);
+            }
+            // Send the batch without waiting for the worker to receive it
+            if (!transport.send(grant.worker(), writer, length)) {
+                // The worker went away after its credit was granted. Nothing was sent, so nothing is lost:
+                // the reviews go to the next grant, and the credit is given back until the worker is removed
+                times.removeNewest(reviews.size());
+                creditScheduler.release(grant, 0);
+                unsent.addAll(reviews);
+                freeWriters.push(writer);
+                continue;
+            }
+            // The reviews a worker holds are counted as lost when it is removed, except those of the open grant.
+            // A worker removed during this send left the grant closed, so its reviews are counted here
+            if (!creditScheduler.release(grant, reviews.size())) {
+                times.removeNewest(reviews.size());
+                lostReviews.addAndGet(reviews.size());
+            }
+            // A restarted worker counts from zero again, its counter is left alone
+            batchSequences.compareAndSet(grant.worker(), batchSequence, batchSequence + 1);
+            reviewSequence += reviews.size();
+            sentMessages.incrementAndGet();
+            sentReviews.addAndGet(reviews.size());
+        }
+    }
+
+    /**
+     *  System.nanoTime receive times of the reviews sent to one worker and not credited back, oldest first,
+    * with the topic of every review when several topics share the workers.
+    * */
+    private static final class ReceiveTimes {
+        private long[] times = new long[64];
+        private String[] topics = new String[64];
+        private int head;
+        private int size;
+
+        synchronized void add(long receivedNanos, String topic) {
+            if (size == times.length) {
+                long[] grown = new long[times.length * 2];
+                String[] grownTopics = new String[times.length * 2];
+                for (int i = 0; i < size; i++) {
+                    grown[i] = times[(head + i) % times.length];
+                    grownTopics[i] = topics[(head + i) % times.length];
+                }
+                times = grown;
+                topics = grownTopics;
+                head = 0;
+            }
+            times[(head + size) % times.length] = receivedNanos;
+            topics[(head + size) % times.length] = topic;
+            size++;
+        }
+
+        // The worker finished the oldest reviews, record their end-to-end latency and that of their topic,
+        // so a topic measures the time to its results as in the parallel mode
+        synchronized void complete(int reviews, PipelineMetrics metrics) {
+            for (int i = Math.min(reviews, size); i > 0; i--) {
+                metrics.recordEndToEnd(times[head]);
+                if (topics[head] != null) {
+                    metrics.recordTopic(topics[head], times[head]);
+                }
+                head = (head + 1) % times.length;
+                size--;
+            }
+        }
+
+        // Forget the newest reviews, which were not sent after all
+        synchronized void removeNewest(int reviews) {
+            size -= Math.min(reviews, size);
+        }
+
+        synchronized void clear() {
+            size = 0;
+        }
+    }
+
+    // Milliseconds of the monotonic clock of this process
+    static long monotonicMillis() {
+        return System.nanoTime() / 1_000_000;
+    }
+}
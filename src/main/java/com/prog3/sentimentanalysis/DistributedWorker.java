@@ -0,0 +1,156 @@
+package com.prog3.sentimentanalysis;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  Worker of the distributed implementation, on any transport.
+* It advertises how many reviews it can hold, analyzes the batches of the master on the receive loop or on a
+* pool of threads, returns the credit of the reviews it has analyzed and sends its totals once per second.
+* How the batches arrive and how the credit and the totals are sent is left to the Transport.
+* */
+public class DistributedWorker {
+
+    /**
+     *  Carries the batches of the master to the worker and the credit and statistics back.
+    * */
+    public interface Transport {
+        // Wait for the next batch of the master, null when the master cannot be reached anymore
+        ReviewBatch.Batch receive() throws InterruptedException;
+
+        // Credit for reviews that were analyzed, the first credit is the number of reviews the worker can hold
+        void sendCredit(int reviews);
+
+        // Send a report of the totals without waiting, see WorkerStatsAggregator. The array is reused for the
+        // next report, and a report may be skipped while the previous one is still on its way
+        void sendStats(long[] report);
+    }
+
+    private final DistributedConfig config;
+    // Prefix of every line the worker prints
+    private final String name;
+    private final Transport transport;
+
+    public DistributedWorker(DistributedConfig config, String name, Transport transport) {
+        this.config = config;
+        this.name = name;
+        this.transport = transport;
+    }
+
+    // Analyze the batches of the master until it cannot be reached anymore
+    public void run() {
+        // Create an instance of SentimentAnalyzer
+        TieredSentimentAnalyzer.TierStats tierStats = new TieredSentimentAnalyzer.TierStats();
+        SentimentAnalyzer sentimentAnalyzer = config.createAnalyzer(tierStats);
+        // Load the models and warm up before the first count is sent, so the master does not record zeros
+        if (config.warmupRounds > 0) {
+            Warmup.run(sentimentAnalyzer, config.warmupRounds);
+        }
+
+        // Initialize variables for tracking reviews processed per second, counted by every analysis thread of the worker
+        AtomicInteger analyzedReviews = new AtomicInteger();
+        PipelineMetrics metrics = PipelineMetrics.getShared();
+        metrics.monitorGarbageCollection();
+        // Totals since the start, a report that is late or not sent loses nothing
+        long[] analyzedTotal = {0};
+        long[] sentimentTotals = new long[PipelineMetrics.sentimentClassCount()];
+        long[] report = new long[WorkerStatsAggregator.reportLength()];
+        long[] reportSequence = {0};
+        // Schedule a task to log the number of reviews processed per second
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+        scheduler.scheduleAtFixedRate(() -> {
+            int analyzed = analyzedReviews.getAndSet(0);
+            analyzedTotal[0] += analyzed;
+            int[] counts = metrics.takeSentimentCounts();
+            for (int i = 0; i < counts.length; i++) {
+                sentimentTotals[i] += counts[i];
+            }
+            // Send the totals without waiting
+            WorkerStatsAggregator.fillReport(report, reportSequence[0]++, DistributedMaster.monotonicMillis(),
+                    analyzedTotal[0], sentimentTotals);
+            transport.sendStats(report);
+            System.out.println(name + " - " + metrics.takeReport(analyzed, 0, 0).summary());
+            if (SentimentCache.getShared() != null) {
+                System.out.println(name + " - " + SentimentCache.getShared());
+            }
+            if (sentimentAnalyzer instanceof TieredSentimentAnalyzer) {
+                System.out.println(name + " - " + tierStats);
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+
+        long expectedBatch = 0;
+        // Advertise how many reviews this worker can hold, the master sends nothing before
+        int capacity = config.workerCapacity();
+        transport.sendCredit(capacity);
+
+        // With more than one thread this loop only receives, and the reviews are analyzed by a pool of threads.
+        // Each thread has its own analyzer, and all of them share the models loaded once by SharedPipelines
+        ParallelSentimentEngine analyzerPool = null;
+        // Reviews handed to the pool and not finished, and finished reviews whose credit was not yet returned
+        AtomicInteger unfinished = new AtomicInteger();
+        AtomicInteger finished = new AtomicInteger();
+        if (config.workerThreads > 1) {
+            analyzerPool = new ParallelSentimentEngine(config.workerThreads, capacity, LoadShedder.Policy.BLOCK,
+                    LoadShedder.DEFAULT_SAMPLE_RATE, () -> config.createAnalyzer(tierStats), (review, sentiment) -> {
+                System.out.println(name + " - Sentiment: " + sentiment);
+                metrics.recordSentiment(sentiment);
+                analyzedReviews.incrementAndGet();
+                // Return the credit in one message for a batch worth of reviews, or when the worker has nothing
+                // left to do. A review counts as finished before it leaves the unfinished ones, so the thread
+                // that finishes the last one always returns all of the credit
+                int credits = finished.incrementAndGet();
+                if (unfinished.decrementAndGet() == 0 || credits >= config.batchSize) {
+                    int returned = finished.getAndSet(0);
+                    if (returned > 0) {
+                        transport.sendCredit(returned);
+                    }
+                }
+            });
+            analyzerPool.start();
+            System.out.println(name + " - analyzing on " + config.workerThreads + " threads");
+        }
+        // Receive messages from master process
+        while (true) {
+            ReviewBatch.Batch batch;
+            try {
+                batch = transport.receive();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (batch == null) {
+                System.err.println(name + " - the master cannot be reached anymore");
+                return;
+            }
+            if (batch.batchSequence() != expectedBatch) {
+                System.err.println(name + " - expected batch " + expectedBatch
+                        + " but received batch " + batch.batchSequence());
+            }
+            expectedBatch = batch.batchSequence() + 1;
+            if (analyzerPool != null) {
+                // The credit is returned by the analysis threads
+                for (String receivedMessage : batch.reviews()) {
+                    unfinished.incrementAndGet();
+                    try {
+                        analyzerPool.submit(receivedMessage);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                continue;
+            }
+            for (String receivedMessage : batch.reviews()) {
+                // Perform sentiment analysis on the received message
+                String sentiment = sentimentAnalyzer.analyzeSentiment(receivedMessage);
+                // Print the sentiment result
+                System.out.println(name + " - Sentiment: " + sentiment);
+                metrics.recordSentiment(sentiment);
+                // Increment the count of reviews processed this second
+                analyzedReviews.incrementAndGet();
+            }
+            // Return the credit of the batch, so the master can send the next one
+            transport.sendCredit(batch.reviews().size());
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.prog3.sentimentanalysis;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  Recognizes reviews that were already received, so no NLP time is spent on them again.
+* Every review is reduced to a 64-bit fingerprint of its ASIN, its reviewer and the hash of its
+* normalized text, which is looked up in a rotating Bloom filter with a fixed memory budget.
+* The budget is split into generations of equal size. New fingerprints go into the newest generation,
+* and once it holds as many as it can keep at a 0.1% false positive rate, the oldest generation is
+* cleared and becomes the newest. A review is a duplicate if any generation has seen it, so the window
+* covers between one and all generations' worth of recent reviews, and memory never grows.
+* One shared instance is used by all modes of the JVM, like the SentimentCache.
+* */
+public class DuplicateFilter {
+    // Default memory budget of the shared filter
+    public static final long DEFAULT_BUDGET_BYTES = 1024L * 1024L;
+    private static final int GENERATIONS = 4;
+    // Number of bit positions per fingerprint, with 15 bits per entry this gives about 0.1% false positives
+    // in each generation, so few new reviews are mistaken for duplicates even when all generations are checked
+    private static final int HASHES = 10;
+    private static final int BITS_PER_ENTRY = 15;
+
+    // Filter shared by every mode in this JVM, null when duplicates are not filtered
+    private static volatile DuplicateFilter shared = new DuplicateFilter(DEFAULT_BUDGET_BYTES);
+
+    private final long[][] generations;
+    private final long bitsPerGeneration;
+    private final long entriesPerGeneration;
+    private int newest;
+    private long newestEntries;
+    private final LongAdder checked = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+
+    public DuplicateFilter(long budgetBytes) {
+        long wordsPerGeneration = budgetBytes / Long.BYTES / GENERATIONS;
+        if (wordsPerGeneration < 1 || wordsPerGeneration > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid duplicate filter budget: " + budgetBytes + " bytes");
+        }
+        this.generations = new long[GENERATIONS][(int) wordsPerGeneration];
+        this.bitsPerGeneration = wordsPerGeneration * Long.SIZE;
+        this.entriesPerGeneration = Math.max(1, bitsPerGeneration / BITS_PER_ENTRY);
+    }
+
+    public static DuplicateFilter getShared() {
+        return shared;
+    }
+
+    // Replace the shared filter with one of the given budget, a budget of 0 disables filtering
+    public static void configureShared(long budgetBytes) {
+        shared = budgetBytes > 0 ? new DuplicateFilter(budgetBytes) : null;
+    }
+
+    // Fingerprint of a review from its ASIN, its reviewer and its normalized text, missing fields are left out
+    public static long fingerprint(String asin, String reviewerID, String reviewText) {
+        long hash = SentimentCache.key(reviewText);
+        hash = combine(hash, asin);
+        hash = combine(hash, reviewerID);
+        return hash;
+    }
+
+    // Returns true if the review was seen before, otherwise remembers it
+    public boolean isDuplicate(JsonParser.Review review) {
+        return isDuplicate(fingerprint(review.asin(), review.reviewerID(), review.reviewText()));
+    }
+
+    // Returns true if the fingerprint was seen before, otherwise remembers it
+    public boolean isDuplicate(long fingerprint) {
+        checked.increment();
+        // Double hashing gives the bit positions, the odd step never repeats a position too early
+        long h1 = fingerprint;
+        long h2 = (fingerprint >>> 32 | fingerprint << 32) | 1;
+        boolean duplicate;
+        synchronized (this) {
+            duplicate = false;
+            for (int g = 0; g < GENERATIONS && !duplicate; g++) {
+                duplicate = contains(generations[g], h1, h2);
+            }
+            if (!duplicate) {
+                add(generations[newest], h1, h2);
+                if (++newestEntries >= entriesPerGeneration) {
+                    rotate();
+                }
+            }
+        }
+        if (duplicate) {
+            duplicates.increment();
+            PipelineMetrics.getShared().recordDuplicate();
+        }
+        return duplicate;
+    }
+
+    public long getChecked() {
+        return checked.sum();
+    }
+
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    // Number of reviews a generation holds, the window is between one and all generations of these
+    public long getEntriesPerGeneration() {
+        return entriesPerGeneration;
+    }
+
+    @Override
+    public String toString() {
+        long total = getChecked();
+        long found = getDuplicates();
+        double rate = total == 0 ? 0 : 100.0 * found / total;
+        return String.format("Duplicates: %d of %d reviews (%.1f%%), window of %d to %d reviews",
+                found, total, rate, entriesPerGeneration, entriesPerGeneration * GENERATIONS);
+    }
+
+    private boolean contains(long[] bits, long h1, long h2) {
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitsPerGeneration);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(long[] bits, long h1, long h2) {
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitsPerGeneration);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    // Clear the oldest generation and make it the newest
+    private void rotate() {
+        newest = (newest + 1) % GENERATIONS;
+        Arrays.fill(generations[newest], 0);
+        newestEntries = 0;
+    }
+
+    // Mix a field into the hash, a missing field changes nothing
+    private static long combine(long hash, String field) {
+        if (field == null) {
+            return hash;
+        }
+        for (int i = 0; i < field.length(); i++) {
+            hash = (hash ^ field.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
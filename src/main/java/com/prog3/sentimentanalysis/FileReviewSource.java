@@ -0,0 +1,189 @@
+package com.prog3.sentimentanalysis;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *  Review source that replays a JSONL file with one server message per line.
+* The file is memory-mapped in large regions and split into lines without copying it through a stream,
+* so the replay itself costs almost nothing compared to the analysis.
+* Messages can be replayed as fast as possible, at a fixed number of messages per second, or at the
+* pace they were recorded, using the "_ts" field written by WebSocketReviewSource.
+* */
+public class FileReviewSource implements ReviewSource {
+
+    public enum Mode {
+        FAST, RATE, ORIGINAL;
+
+        public static Mode parse(String name) {
+            return valueOf(name.trim().toUpperCase());
+        }
+    }
+
+    /**
+     *  How the file is replayed. The rate is in messages per second and only used by RATE,
+    * the speed multiplies the recorded pace of ORIGINAL. When loop is set the file starts again at its end.
+    * */
+    public record Replay(Mode mode, double rate, double speed, boolean loop) {
+        public static final Replay FAST = new Replay(Mode.FAST, DEFAULT_RATE, 1, false);
+    }
+
+    // Default messages per second of the RATE mode
+    public static final double DEFAULT_RATE = 100;
+    // Largest part of the file mapped at once
+    private static final long MAX_REGION = 1L << 30;
+    private static final String TIMESTAMP_PREFIX = "{\"_ts\":";
+
+    private final Path file;
+    private final Replay replay;
+    private final long maxRegion;
+    private Thread replayThread;
+
+    public FileReviewSource(Path file, Replay replay) {
+        this(file, replay, MAX_REGION);
+    }
+
+    // With smaller regions, so the lines across region boundaries can be tested
+    FileReviewSource(Path file, Replay replay, long maxRegion) {
+        if (replay.mode() == Mode.RATE && replay.rate() <= 0) {
+            throw new IllegalArgumentException("Replay rate must be positive: " + replay.rate());
+        }
+        if (replay.speed() <= 0) {
+            throw new IllegalArgumentException("Replay speed must be positive: " + replay.speed());
+        }
+        this.file = file;
+        this.replay = replay;
+        this.maxRegion = maxRegion;
+    }
+
+    @Override
+    public synchronized void start(MessageHandler messageHandler) {
+        if (replayThread != null) {
+            return;
+        }
+        replayThread = new Thread(() -> runReplay(messageHandler), "review-replay");
+        replayThread.start();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (replayThread != null) {
+            replayThread.interrupt();
+            replayThread = null;
+        }
+    }
+
+    private void runReplay(MessageHandler messageHandler) {
+        System.out.println("Replaying " + file + " (" + replay + ")");
+        Pacer pacer = new Pacer();
+        long messages = 0;
+        try {
+            do {
+                messages += replayFile(messageHandler, pacer);
+                pacer.firstTimestamp = -1;
+            } while (replay.loop() && !Thread.currentThread().isInterrupted());
+            System.out.println("Replay finished after " + messages + " messages.");
+        } catch (IOException e) {
+            System.err.println("Error replaying " + file + ": " + e.getMessage());
+        }
+    }
+
+    // Map the file region by region and pass every line to the handler, returns the number of lines
+    private long replayFile(MessageHandler messageHandler, Pacer pacer) throws IOException {
+        long messages = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long length = Math.min(maxRegion, size - position);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int lineStart = 0;
+                for (int i = 0; i < length; i++) {
+                    if (region.get(i) == '\n') {
+                        messages += emit(region, lineStart, i, messageHandler, pacer);
+                        lineStart = i + 1;
+                        if (Thread.currentThread().isInterrupted()) {
+                            return messages;
+                        }
+                    }
+                }
+                if (position + length >= size) {
+                    // The last line may not end with a newline
+                    messages += emit(region, lineStart, (int) length, messageHandler, pacer);
+                    position = size;
+                } else if (lineStart == 0) {
+                    throw new IOException("Line longer than " + maxRegion + " bytes at offset " + position);
+                } else {
+                    // Map the next region from the start of the unfinished line
+                    position += lineStart;
+                }
+            }
+        }
+        return messages;
+    }
+
+    private int emit(MappedByteBuffer region, int start, int end, MessageHandler messageHandler, Pacer pacer) {
+        if (end > start && region.get(end - 1) == '\r') {
+            end--;
+        }
+        if (end <= start) {
+            return 0;
+        }
+        byte[] bytes = new byte[end - start];
+        region.get(start, bytes);
+        String message = new String(bytes, StandardCharsets.UTF_8);
+        pacer.await(message);
+        // A file can hold the messages of several topics, the handler finds the topic in the message
+        messageHandler.onMessage(null, message);
+        return 1;
+    }
+
+    // Waits before each message according to the replay mode
+    private final class Pacer {
+        private final long startNanos = System.nanoTime();
+        private long sent;
+        private long firstTimestamp = -1;
+        private long loopStartNanos = startNanos;
+
+        void await(String message) {
+            long dueNanos;
+            if (replay.mode() == Mode.RATE) {
+                dueNanos = startNanos + (long) (sent * 1_000_000_000.0 / replay.rate());
+            } else if (replay.mode() == Mode.ORIGINAL && timestampOf(message) >= 0) {
+                long timestamp = timestampOf(message);
+                if (firstTimestamp < 0) {
+                    firstTimestamp = timestamp;
+                    loopStartNanos = System.nanoTime();
+                }
+                dueNanos = loopStartNanos + (long) ((timestamp - firstTimestamp) * 1_000_000.0 / replay.speed());
+            } else {
+                // Replayed as fast as possible
+                return;
+            }
+            sent++;
+            long wait;
+            while ((wait = dueNanos - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+
+        // The recorded receive time of a message, or -1 if it has none
+        private long timestampOf(String message) {
+            if (!message.startsWith(TIMESTAMP_PREFIX)) {
+                return -1;
+            }
+            long timestamp = 0;
+            int i = TIMESTAMP_PREFIX.length();
+            while (i < message.length() && Character.isDigit(message.charAt(i))) {
+                timestamp = timestamp * 10 + (message.charAt(i) - '0');
+                i++;
+            }
+            return i > TIMESTAMP_PREFIX.length() ? timestamp : -1;
+        }
+    }
+}
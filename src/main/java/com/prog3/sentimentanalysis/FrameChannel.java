@@ -0,0 +1,195 @@
+package com.prog3.sentimentanalysis;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ *  One TCP connection of the socket transport, in non-blocking mode, carrying frames.
+* A frame is its length, a type byte and the payload. Frames are read into one direct buffer, which only
+* grows when a frame does not fit, and written with gathering writes from a queue, so the direct buffer
+* of a ReviewBatch.Writer goes to the socket without being copied.
+* Any thread can queue a frame, only the I/O thread of the connection reads, writes and closes it.
+* */
+public class FrameChannel {
+    // Worker to coordinator: the session id of the worker process
+    public static final byte HELLO = 1;
+    // Coordinator to worker: the number of the worker
+    public static final byte WELCOME = 2;
+    // Coordinator to worker: a ReviewBatch
+    public static final byte BATCH = 3;
+    // Worker to coordinator: credit for a number of reviews
+    public static final byte CREDIT = 4;
+    // Worker to coordinator: the totals of the worker, see WorkerStatsAggregator
+    public static final byte STATS = 5;
+    // Both ways, keeps a quiet connection alive
+    public static final byte HEARTBEAT = 6;
+    private static final int HEADER_BYTES = Integer.BYTES + 1;
+    // Larger frames are treated as a corrupt connection
+    private static final int MAX_FRAME_BYTES = 256 * 1024 * 1024;
+    private static final int INITIAL_READ_BYTES = 64 * 1024;
+
+    /**
+     *  Receives every complete frame, the payload is only valid during the call.
+    * */
+    public interface FrameHandler {
+        void onFrame(byte type, ByteBuffer payload) throws IOException;
+    }
+
+    // A frame waiting to be written, and what runs once it was written or dropped
+    private record Outgoing(ByteBuffer[] buffers, Runnable done) {
+    }
+
+    private final SocketChannel channel;
+    private ByteBuffer readBuffer = ByteBuffer.allocateDirect(INITIAL_READ_BYTES);
+    private final ConcurrentLinkedQueue<Outgoing> outgoing = new ConcurrentLinkedQueue<>();
+    // Frame of which only a part was written
+    private Outgoing current;
+    private volatile long lastReceivedMillis = DistributedMaster.monotonicMillis();
+    private volatile boolean closed;
+
+    public FrameChannel(SocketChannel channel) throws IOException {
+        this.channel = channel;
+        channel.configureBlocking(false);
+        // Credit and heartbeats are tiny frames that must not wait for more data
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    // Queue a frame, done runs on the I/O thread once it was written or the connection was closed, it may be null.
+    // Returns false if the connection is already closed
+    public boolean send(byte type, ByteBuffer payload, Runnable done) {
+        if (closed) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(1 + payload.remaining()).put(type).flip();
+        outgoing.add(new Outgoing(new ByteBuffer[] {header, payload}, done));
+        if (closed) {
+            // Closed while the frame was queued, it is dropped like the others
+            dropQueued();
+        }
+        return true;
+    }
+
+    public boolean sendEmpty(byte type) {
+        return send(type, ByteBuffer.allocate(0), null);
+    }
+
+    public boolean sendInt(byte type, int value) {
+        return send(type, ByteBuffer.allocate(Integer.BYTES).putInt(value).flip(), null);
+    }
+
+    public boolean sendLongs(byte type, long[] values, Runnable done) {
+        ByteBuffer payload = ByteBuffer.allocate(values.length * Long.BYTES);
+        payload.asLongBuffer().put(values);
+        return send(type, payload, done);
+    }
+
+    public boolean hasPending() {
+        return current != null || !outgoing.isEmpty();
+    }
+
+    // Write the queued frames until the socket takes no more, returns true when all of them were written
+    public boolean flush() throws IOException {
+        while (true) {
+            if (current == null) {
+                current = outgoing.poll();
+                if (current == null) {
+                    return true;
+                }
+            }
+            channel.write(current.buffers());
+            if (current.buffers()[0].hasRemaining() || current.buffers()[1].hasRemaining()) {
+                return false;
+            }
+            if (current.done() != null) {
+                current.done().run();
+            }
+            current = null;
+        }
+    }
+
+    // Read what has arrived and hand every complete frame to the handler, returns false at the end of the stream
+    public boolean read(FrameHandler handler) throws IOException {
+        int read = channel.read(readBuffer);
+        if (read < 0) {
+            return false;
+        }
+        if (read > 0) {
+            lastReceivedMillis = DistributedMaster.monotonicMillis();
+        }
+        readBuffer.flip();
+        while (readBuffer.remaining() >= HEADER_BYTES) {
+            int start = readBuffer.position();
+            int length = readBuffer.getInt(start);
+            if (length < 1 || length > MAX_FRAME_BYTES) {
+                throw new IOException("Invalid frame of " + length + " bytes");
+            }
+            if (readBuffer.remaining() < Integer.BYTES + length) {
+                break;
+            }
+            byte type = readBuffer.get(start + Integer.BYTES);
+            ByteBuffer payload = readBuffer.slice(start + HEADER_BYTES, length - 1);
+            readBuffer.position(start + Integer.BYTES + length);
+            try {
+                handler.onFrame(type, payload);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                // A payload too short for its type or a batch that cannot be decoded only fails this connection
+                throw new IOException("Corrupt frame of type " + type + " with " + (length - 1) + " payload bytes"
+                        + (e.getMessage() != null ? ": " + e.getMessage() : ""), e);
+            }
+        }
+        readBuffer.compact();
+        // Grow the buffer when the frame at its start does not fit
+        if (readBuffer.position() >= Integer.BYTES) {
+            int length = readBuffer.getInt(0);
+            int needed = Integer.BYTES + length;
+            if (length <= MAX_FRAME_BYTES && needed > readBuffer.capacity()) {
+                ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(needed, readBuffer.capacity() * 2));
+                grown.put(readBuffer.flip());
+                readBuffer = grown;
+            }
+        }
+        return true;
+    }
+
+    // Time of the monotonic clock at which the last bytes arrived
+    public long getLastReceivedMillis() {
+        return lastReceivedMillis;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    // Close the connection, the frames that were not written are dropped but their done actions still run
+    public void close() {
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Closed anyway
+        }
+        if (current != null && current.done() != null) {
+            current.done().run();
+        }
+        current = null;
+        dropQueued();
+    }
+
+    private void dropQueued() {
+        Outgoing dropped;
+        while ((dropped = outgoing.poll()) != null) {
+            if (dropped.done() != null) {
+                dropped.done().run();
+            }
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.prog3.sentimentanalysis;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
 
 /**
  *  The purpose of this class is to parse the Json objects that we get from the server.
@@ -9,39 +11,140 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 * {"music":"{\"reviewerID\": \"A3V5XBBT7OZG5G\", \"asin\": \"0001393774\", \"reviewerName\": \"gflady\", \"verified\": true, \"reviewText\": \"One of my very favourite albums from one of my very favourite singers.  I was happy to see I could replace the old worn cassettes from years ago.\", \"overall\": 5.0, \"reviewTime\": \"02 23, 2016\", \"summary\": \"One of my very favourite albums from one of my very favourite singers\", \"unixReviewTime\": 1456185600}"}
 *  and the relevant part for analyzing is just the contents of \"reviewText\"
 * The method extractReviewText returns only the contents of the \"reviewText\".
+* The method extractReview also returns the \"asin\", \"reviewerID\", \"overall\" and \"unixReviewTime\" fields,
+* and messageTopic returns the topic of a message when several topics are received.
+* Both read the message with a streaming parser in a single pass, without building a tree,
+* and skip every field they do not need.
 * */
 public class JsonParser {
+    // The factory is thread-safe and shared by all threads, only the parsers are created per message
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     *  One review taken from a message.
+    * Fields that were not requested or not present are null for text, NaN for overall and 0 for the time.
+    * */
+    public record Review(String reviewText, String asin, String reviewerID, double overall, long unixReviewTime) {
+    }
+
+    // Returns only the review text, the parser stops as soon as it is found
     public static String extractReviewText(String reviewJson, String topic) {
-        try {
-            // Parse the JSON string
-            ObjectMapper objectMapper = new ObjectMapper();
-            // Create a jsonNode and read the tree
-            JsonNode jsonNode = objectMapper.readTree(reviewJson);
-            JsonNode internalNode = jsonNode.get(topic);
-
-            // Check if the message is of the expected format
-            if (internalNode != null && !internalNode.isNull()) {
-                String reviewText = internalNode.asText();
-                JsonNode innerNode = objectMapper.readTree(reviewText);
-                JsonNode reviewTextNode = innerNode.get("reviewText");
-
-//                System.out.println("Review text: "+ reviewTextNode);
-
-                // Once we have the review text, we convert it to text
-                if (reviewTextNode != null) {
-                    return reviewTextNode.asText();
-                } else {
-                    System.err.println("Review text not found within internal node.");
-                    return null;
-                }
-            } else {
+        Review review = parseMessage(reviewJson, topic, false);
+        return review != null ? review.reviewText() : null;
+    }
+
+    // Returns the review text together with the asin, the reviewer, the overall rating and the review time
+    public static Review extractReview(String reviewJson, String topic) {
+        return parseMessage(reviewJson, topic, true);
+    }
+
+    // Returns the topic of a message, the name of its first field other than the "_ts" of a recording
+    public static String messageTopic(String reviewJson) {
+        try (com.fasterxml.jackson.core.JsonParser outer = JSON_FACTORY.createParser(reviewJson)) {
+            if (outer.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (outer.nextToken() == JsonToken.FIELD_NAME) {
+                if (!outer.currentName().equals("_ts")) {
+                    return outer.currentName();
+                }
+                outer.nextToken();
+                outer.skipChildren();
+            }
+            return null;
+        } catch (IOException e) {
+            System.err.println("Error parsing JSON: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static Review parseMessage(String reviewJson, String topic, boolean withExtras) {
+        try (com.fasterxml.jackson.core.JsonParser outer = JSON_FACTORY.createParser(reviewJson)) {
+            if (outer.nextToken() != JsonToken.START_OBJECT) {
                 System.err.println("Error parsing internal json node!");
                 return null;
             }
-        } catch (Exception e) {
+            // Look for the field named after the topic and skip all the others
+            while (outer.nextToken() == JsonToken.FIELD_NAME) {
+                boolean isTopic = topic.equals(outer.currentName());
+                JsonToken value = outer.nextToken();
+                if (isTopic && value == JsonToken.VALUE_STRING) {
+                    // The review is an escaped json string, parse it straight from the buffer of the outer parser
+                    try (com.fasterxml.jackson.core.JsonParser inner = JSON_FACTORY.createParser(
+                            outer.getTextCharacters(), outer.getTextOffset(), outer.getTextLength())) {
+                        if (inner.nextToken() != JsonToken.START_OBJECT) {
+                            break;
+                        }
+                        return readReview(inner, withExtras);
+                    }
+                } else if (isTopic && value == JsonToken.START_OBJECT) {
+                    // The review is sent as a nested object instead of a string
+                    return readReview(outer, withExtras);
+                }
+                outer.skipChildren();
+            }
+            System.err.println("Error parsing internal json node!");
+            return null;
+        } catch (IOException e) {
             System.err.println("Error parsing JSON: " + e.getMessage());
             return null;
         }
     }
 
+    // Read the fields of a review, the parser must be positioned on the start of the review object
+    private static Review readReview(com.fasterxml.jackson.core.JsonParser parser, boolean withExtras) throws IOException {
+        String reviewText = null;
+        String asin = null;
+        String reviewerID = null;
+        double overall = Double.NaN;
+        long unixReviewTime = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (name) {
+                case "reviewText" -> {
+                    reviewText = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                    if (!withExtras) {
+                        // Nothing else is needed, the rest of the message is never read
+                        return reviewTextOrError(reviewText, null, null, overall, unixReviewTime);
+                    }
+                }
+                case "asin" -> {
+                    if (withExtras && value == JsonToken.VALUE_STRING) {
+                        asin = parser.getText();
+                    }
+                }
+                case "reviewerID" -> {
+                    if (withExtras && value == JsonToken.VALUE_STRING) {
+                        reviewerID = parser.getText();
+                    }
+                }
+                case "overall" -> {
+                    if (withExtras && value.isNumeric()) {
+                        overall = parser.getDoubleValue();
+                    }
+                }
+                case "unixReviewTime" -> {
+                    if (withExtras && value.isNumeric()) {
+                        unixReviewTime = parser.getLongValue();
+                    }
+                }
+                default -> {
+                }
+            }
+            // Skip nested values of the fields that are not needed
+            parser.skipChildren();
+        }
+        return reviewTextOrError(reviewText, asin, reviewerID, overall, unixReviewTime);
+    }
+
+    private static Review reviewTextOrError(String reviewText, String asin, String reviewerID, double overall,
+                                            long unixReviewTime) {
+        if (reviewText == null) {
+            System.err.println("Review text not found within internal node.");
+            return null;
+        }
+        return new Review(reviewText, asin, reviewerID, overall, unixReviewTime);
+    }
+
 }
@@ -0,0 +1,123 @@
+package com.prog3.sentimentanalysis;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *  Histogram of latencies in microseconds with a fixed number of log-linear buckets, like an HDR histogram.
+* Values below 64 us have their own bucket, above that every power of two is split into 32 buckets,
+* so a percentile is never more than about 3% above the real value. Recording is lock-free and
+* allocation-free, so it can be called from every thread on the hot path.
+* The histogram is read and cleared once per interval with snapshotAndReset.
+* */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    // Values up to 2^40 us (about 12 days) are kept, larger ones go to the last bucket
+    private static final int MAX_BITS = 40;
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_BITS - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS;
+
+    /**
+     *  Latencies recorded in one interval.
+    * */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        // Latency in microseconds that the given fraction of the values (0.99 for p99) do not exceed
+        public long getPercentile(double fraction) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(i), max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "p50 " + getPercentile(0.5) + " us, p99 " + getPercentile(0.99) + " us, p999 "
+                    + getPercentile(0.999) + " us, max " + max + " us (" + count + ")";
+        }
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    // Record a latency given in nanoseconds
+    public void recordNanos(long nanos) {
+        record(Math.max(0, nanos / 1000));
+    }
+
+    // Record a latency given in microseconds
+    public void record(long micros) {
+        counts.incrementAndGet(indexOf(micros));
+        sum.addAndGet(micros);
+        long currentMax;
+        while (micros > (currentMax = max.get()) && !max.compareAndSet(currentMax, micros)) {
+            // Another thread raised the maximum, check again
+        }
+    }
+
+    // Take the values recorded since the last snapshot and start a new interval
+    public Snapshot snapshotAndReset() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.getAndSet(i, 0);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, sum.getAndSet(0), max.getAndSet(0));
+    }
+
+    private static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(micros)) - (SUB_BUCKET_BITS - 1);
+        if (shift > MAX_BITS - SUB_BUCKET_BITS) {
+            return BUCKETS - 1;
+        }
+        int top = (int) (micros >>> shift);
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (top - HALF_SUB_BUCKETS);
+    }
+
+    // Largest value that falls into the bucket
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        long top = (index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,135 @@
+package com.prog3.sentimentanalysis;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *  The purpose of this class is to give a cheap first estimate of the sentiment of a review.
+* Every word of the review is looked up in a small bundled lexicon (sentiment-lexicon.txt).
+* A negation (not, never, n't, ...) flips the score of the next three words, intensifiers like
+* "very" strengthen the next word, and words after "but" count more than the words before it.
+* The sum of the scores is squashed into a compound score between -1 and 1 whose absolute value
+* is the confidence of the estimate. The compound score is mapped onto the same five classes as CoreNLP,
+* a strong score is "Very positive" or "Very negative". The classifier has no state and can be shared by all threads.
+* */
+public class LexiconClassifier {
+    // Label and confidence between 0 and 1 of one review
+    public record Result(String sentiment, double confidence) {
+    }
+
+    private static final String LEXICON_RESOURCE = "/sentiment-lexicon.txt";
+    // Controls how fast the compound score approaches 1, the same normalization as VADER
+    private static final double NORMALIZATION = 15.0;
+    // Number of words after a negation whose score is flipped
+    private static final int NEGATION_SCOPE = 3;
+    // Compound score from which a review is very positive or very negative, an intensified strong word
+    // like "absolutely amazing" or two strong words reach it, a single strong word does not
+    static final double STRONG_COMPOUND = 0.75;
+    private static final Set<String> NEGATIONS = Set.of("not", "no", "never", "nothing", "neither", "nor", "none",
+            "cannot", "without", "hardly", "barely");
+    private static final Set<String> INTENSIFIERS = Set.of("very", "really", "extremely", "so", "totally",
+            "absolutely", "incredibly", "super", "highly", "truly");
+
+    // The lexicon is read once and shared by all instances
+    private static final Map<String, Integer> LEXICON = loadLexicon();
+
+    public Result classify(String reviewText) {
+        double before = 0;
+        double after = 0;
+        boolean afterBut = false;
+        int negationLeft = 0;
+        double intensity = 1.0;
+        int length = reviewText.length();
+        int i = 0;
+        while (i < length) {
+            // Find the next word made of letters and apostrophes
+            while (i < length && !isWordChar(reviewText.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && isWordChar(reviewText.charAt(i))) {
+                i++;
+            }
+            if (start == i) {
+                break;
+            }
+            String word = reviewText.substring(start, i).toLowerCase();
+            if (word.equals("but")) {
+                afterBut = true;
+                negationLeft = 0;
+                continue;
+            }
+            if (NEGATIONS.contains(word) || word.endsWith("n't") || word.endsWith("n\u2019t")) {
+                negationLeft = NEGATION_SCOPE;
+                continue;
+            }
+            if (INTENSIFIERS.contains(word)) {
+                intensity = 1.5;
+                continue;
+            }
+            Integer score = LEXICON.get(word);
+            double value = score != null ? score * intensity : 0;
+            if (negationLeft > 0) {
+                // A negated word counts less than the opposite word would, "not bad" is not "great"
+                value = -value * 0.75;
+                negationLeft--;
+            }
+            intensity = 1.0;
+            if (afterBut) {
+                after += value;
+            } else {
+                before += value;
+            }
+        }
+        // When the review turns with "but", the part after it decides more than the part before
+        double score = afterBut ? before * 0.5 + after * 1.5 : before;
+        double compound = score / Math.sqrt(score * score + NORMALIZATION);
+        return new Result(sentimentOf(compound), Math.abs(compound));
+    }
+
+    // Class of a compound score, in the labels of the CoreNLP sentiment model
+    static String sentimentOf(double compound) {
+        if (compound >= STRONG_COMPOUND) {
+            return "Very positive";
+        } else if (compound > 0) {
+            return "Positive";
+        } else if (compound <= -STRONG_COMPOUND) {
+            return "Very negative";
+        } else if (compound < 0) {
+            return "Negative";
+        }
+        return "Neutral";
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetter(c) || c == '\'' || c == '\u2019';
+    }
+
+    private static Map<String, Integer> loadLexicon() {
+        Map<String, Integer> lexicon = new HashMap<>();
+        try (InputStream input = LexiconClassifier.class.getResourceAsStream(LEXICON_RESOURCE)) {
+            if (input == null) {
+                throw new IllegalStateException("Lexicon not found: " + LEXICON_RESOURCE);
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.trim().split("\\s+");
+                lexicon.put(parts[0], Integer.parseInt(parts[1]));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return lexicon;
+    }
+}
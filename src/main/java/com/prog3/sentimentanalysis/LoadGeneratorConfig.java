@@ -0,0 +1,28 @@
+package com.prog3.sentimentanalysis;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+/**
+ *  Serves the load generator on /sentiment, the same path as the sentiment server.
+* Only active with the "loadgen" profile, which also moves the server to port 8090
+* (application-loadgen.properties), so a client can run next to it on the same machine.
+* */
+@Configuration
+@EnableWebSocket
+@Profile("loadgen")
+public class LoadGeneratorConfig implements WebSocketConfigurer {
+    private final LoadGeneratorServer loadGeneratorServer;
+
+    public LoadGeneratorConfig(LoadGeneratorServer loadGeneratorServer) {
+        this.loadGeneratorServer = loadGeneratorServer;
+    }
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(loadGeneratorServer, "/sentiment").setAllowedOrigins("*");
+    }
+}
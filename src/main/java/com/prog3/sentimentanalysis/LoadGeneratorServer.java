@@ -0,0 +1,237 @@
+package com.prog3.sentimentanalysis;
+
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *  Local stand-in for the sentiment server, used to find the saturation point of each mode without the public server.
+* It speaks the same protocol: a client subscribes with "topic: <name>" and then receives
+* {"<topic>":"<escaped review json>"} messages. Reviews are generated by SyntheticReviewGenerator or
+* replayed from a file of review objects, a share of them are repeats of recent reviews.
+* The send rate follows a LoadProfile with an optional ramp and periodic bursts.
+* All messages are sent from one thread, so a client that reads too slowly slows the generator down
+* and the sent rate printed every second shows where the client saturates.
+* Runs instead of WebSocketClient when the "loadgen" profile is active, see LoadGeneratorConfig.
+* */
+@Component
+@Profile("loadgen")
+public class LoadGeneratorServer extends TextWebSocketHandler implements CommandLineRunner {
+
+    /**
+     *  Messages per second over time. The rate climbs linearly from startRate to rate during the
+    * first rampSeconds, and every burstEverySeconds it is multiplied by burstFactor for burstMillis.
+    * */
+    public record LoadProfile(double rate, double startRate, int rampSeconds, int burstEverySeconds,
+                              int burstMillis, double burstFactor) {
+
+        public double rateAt(double elapsedSeconds) {
+            double current = rate;
+            if (elapsedSeconds < rampSeconds) {
+                current = startRate + (rate - startRate) * elapsedSeconds / rampSeconds;
+            }
+            if (burstEverySeconds > 0 && elapsedSeconds % burstEverySeconds < burstMillis / 1000.0) {
+                current *= burstFactor;
+            }
+            return current;
+        }
+    }
+
+    private static final String SUBSCRIBE_PREFIX = "topic: ";
+    // Number of recent reviews a duplicate is picked from
+    private static final int RECENT_REVIEWS = 64;
+
+    // Topic of every subscribed session
+    private final Map<WebSocketSession, String> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicLong sentCount = new AtomicLong();
+    private LoadProfile profile = new LoadProfile(100, 100, 0, 0, 0, 1);
+    private SyntheticReviewGenerator.LengthDistribution lengthDistribution = SyntheticReviewGenerator.LengthDistribution.LOGNORMAL;
+    private int meanWords = 60;
+    private int maxWords = 300;
+    // Share of messages that repeat one of the recent reviews
+    private double duplicateRatio = 0;
+    private long seed = 42;
+    // Review objects read from --reviews, null when the reviews are generated
+    private List<String> replayedReviews;
+    private int nextReplayed;
+    private SyntheticReviewGenerator generator;
+    private SplittableRandom random;
+    private final String[] recentReviews = new String[RECENT_REVIEWS];
+    private long generatedReviews;
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        System.out.println("Client connected: " + session.getRemoteAddress());
+    }
+
+    // Subscribe the session to the topic it asks for
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        String payload = message.getPayload().trim();
+        if (payload.startsWith(SUBSCRIBE_PREFIX)) {
+            String topic = payload.substring(SUBSCRIBE_PREFIX.length()).trim().toLowerCase();
+            subscriptions.put(session, topic);
+            System.out.println("Client " + session.getId() + " subscribed to topic: " + topic);
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        subscriptions.remove(session);
+        System.out.println("Client " + session.getId() + " disconnected: " + status);
+    }
+
+    @Override
+    public void run(String... args) throws Exception {
+        double rate = profile.rate();
+        double startRate = -1;
+        int rampSeconds = 0;
+        int burstEverySeconds = 0;
+        int burstMillis = 0;
+        double burstFactor = 1;
+        Path reviewsFile = null;
+        for (String arg : args) {
+            if (arg.startsWith("--rate=")) {
+                rate = Double.parseDouble(arg.substring(7));
+            } else if (arg.startsWith("--start-rate=")) {
+                startRate = Double.parseDouble(arg.substring(13));
+            } else if (arg.startsWith("--ramp-s=")) {
+                rampSeconds = Integer.parseInt(arg.substring(9));
+            } else if (arg.startsWith("--burst-every-s=")) {
+                burstEverySeconds = Integer.parseInt(arg.substring(16));
+            } else if (arg.startsWith("--burst-ms=")) {
+                burstMillis = Integer.parseInt(arg.substring(11));
+            } else if (arg.startsWith("--burst-factor=")) {
+                burstFactor = Double.parseDouble(arg.substring(15));
+            } else if (arg.startsWith("--length=")) {
+                lengthDistribution = SyntheticReviewGenerator.LengthDistribution.parse(arg.substring(9));
+            } else if (arg.startsWith("--mean-words=")) {
+                meanWords = Integer.parseInt(arg.substring(13));
+            } else if (arg.startsWith("--max-words=")) {
+                maxWords = Integer.parseInt(arg.substring(12));
+            } else if (arg.startsWith("--duplicates=")) {
+                duplicateRatio = Double.parseDouble(arg.substring(13));
+            } else if (arg.startsWith("--reviews=")) {
+                reviewsFile = Path.of(arg.substring(10));
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring(7));
+            }
+        }
+        if (rate <= 0 || rampSeconds < 0 || burstEverySeconds < 0 || burstMillis < 0 || burstFactor <= 0
+                || meanWords < 1 || maxWords < 1 || duplicateRatio < 0 || duplicateRatio > 1) {
+            System.err.println("Invalid load generator arguments.");
+            return;
+        }
+        profile = new LoadProfile(rate, startRate < 0 ? rate : startRate, rampSeconds, burstEverySeconds,
+                burstMillis, burstFactor);
+        generator = new SyntheticReviewGenerator(seed);
+        random = new SplittableRandom(seed);
+        if (reviewsFile != null) {
+            replayedReviews = readReviews(reviewsFile);
+            if (replayedReviews.isEmpty()) {
+                System.err.println("No reviews in " + reviewsFile);
+                return;
+            }
+            System.out.println("Replaying " + replayedReviews.size() + " reviews from " + reviewsFile);
+        } else {
+            System.out.println("Generating reviews with " + lengthDistribution + " lengths of " + meanWords
+                    + " words on average, at most " + maxWords);
+        }
+        System.out.println("Load generator with " + profile + " and " + duplicateRatio + " duplicates");
+
+        Thread sender = new Thread(this::runSender, "load-generator");
+        sender.setDaemon(true);
+        sender.start();
+
+        // Print the sent and target rate every second
+        long startNanos = System.nanoTime();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleAtFixedRate(() -> {
+            double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+            System.out.println("Messages sent per second: " + sentCount.getAndSet(0) + ", target: "
+                    + Math.round(profile.rateAt(elapsedSeconds)) + ", subscribers: " + subscriptions.size());
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    // Send the due number of messages to every subscriber, keeping a fractional credit between rounds
+    private void runSender() {
+        long startNanos = System.nanoTime();
+        long lastNanos = startNanos;
+        double credit = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            long now = System.nanoTime();
+            double rate = profile.rateAt((now - startNanos) / 1e9);
+            credit = Math.min(credit + rate * (now - lastNanos) / 1e9, Math.max(1, rate));
+            lastNanos = now;
+            if (subscriptions.isEmpty()) {
+                credit = 0;
+            }
+            while (credit >= 1) {
+                sendToSubscribers(nextReview());
+                credit--;
+            }
+            // Sleep until the next message is due, at most a millisecond so rate changes are followed
+            long waitNanos = (long) ((1 - credit) / Math.max(rate, 1e-3) * 1e9);
+            LockSupport.parkNanos(Math.min(waitNanos, 1_000_000));
+        }
+    }
+
+    private void sendToSubscribers(String review) {
+        for (Map.Entry<WebSocketSession, String> subscription : subscriptions.entrySet()) {
+            WebSocketSession session = subscription.getKey();
+            try {
+                session.sendMessage(new TextMessage(SyntheticReviewGenerator.toMessage(subscription.getValue(), review)));
+                sentCount.incrementAndGet();
+            } catch (IOException | IllegalStateException e) {
+                System.err.println("Error sending to client " + session.getId() + ": " + e.getMessage());
+                subscriptions.remove(session);
+            }
+        }
+    }
+
+    // Next review object, a repeat of a recent one with the duplicate probability
+    private String nextReview() {
+        if (generatedReviews > 0 && random.nextDouble() < duplicateRatio) {
+            return recentReviews[random.nextInt((int) Math.min(generatedReviews, RECENT_REVIEWS))];
+        }
+        String review;
+        if (replayedReviews != null) {
+            review = replayedReviews.get(nextReplayed);
+            nextReplayed = (nextReplayed + 1) % replayedReviews.size();
+        } else {
+            review = generator.nextReviewJson(generator.nextWordCount(lengthDistribution, meanWords, maxWords));
+        }
+        recentReviews[(int) (generatedReviews % RECENT_REVIEWS)] = review;
+        generatedReviews++;
+        return review;
+    }
+
+    // Review objects of a JSONL file in the Amazon dataset format, one per line
+    private static List<String> readReviews(Path file) throws IOException {
+        List<String> reviews = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            if (line.startsWith("{")) {
+                reviews.add(line);
+            }
+        }
+        return reviews;
+    }
+}
@@ -0,0 +1,145 @@
+package com.prog3.sentimentanalysis;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ *  The purpose of this class is to decide what happens to a review when reviews arrive faster than they are analyzed.
+* Every mode with a queue in front of the analysis hands new reviews to its shedder, which applies the policy:
+* BLOCK waits for a free place, DROP_NEWEST discards the new review when the queue is full,
+* DROP_OLDEST discards the oldest queued review to make room, and SAMPLE keeps only a fraction of the
+* reviews once the queue is more than half full (and drops the new review when it is full).
+* The queue always stays bounded. Reviews dropped because the queue was full and reviews shed by sampling
+* are counted separately, so they can be reported every second next to the throughput.
+* */
+public class LoadShedder<T> {
+
+    public enum Policy {
+        BLOCK, DROP_OLDEST, DROP_NEWEST, SAMPLE;
+
+        // Accepts names like "drop-oldest" from the command line
+        public static Policy parse(String name) {
+            return valueOf(name.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    /**
+     *  The operations of a bounded queue the shedder needs.
+    * RingBuffer has all of them, other queues are adapted with of().
+    * */
+    public interface Target<T> {
+        boolean offer(T item);
+
+        T poll();
+
+        void put(T item) throws InterruptedException;
+
+        int size();
+
+        int capacity();
+
+        static <T> Target<T> of(BlockingQueue<T> queue) {
+            int capacity = queue.size() + queue.remainingCapacity();
+            return new Target<>() {
+                public boolean offer(T item) {
+                    return queue.offer(item);
+                }
+
+                public T poll() {
+                    return queue.poll();
+                }
+
+                public void put(T item) throws InterruptedException {
+                    queue.put(item);
+                }
+
+                public int size() {
+                    return queue.size();
+                }
+
+                public int capacity() {
+                    return capacity;
+                }
+            };
+        }
+    }
+
+    // Default fraction of reviews kept by the SAMPLE policy while the queue is more than half full
+    public static final double DEFAULT_SAMPLE_RATE = 0.5;
+
+    private final Policy policy;
+    private final double sampleRate;
+    // Called with every queued review that is dropped to make room, for example to cancel its future
+    private final Consumer<T> onDropped;
+    // Counters since the last call to takeDropped and takeShed
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+
+    public LoadShedder(Policy policy, double sampleRate, Consumer<T> onDropped) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("Sample rate must be between 0 and 1: " + sampleRate);
+        }
+        this.policy = policy;
+        this.sampleRate = sampleRate;
+        this.onDropped = onDropped;
+    }
+
+    public LoadShedder(Policy policy, double sampleRate) {
+        this(policy, sampleRate, item -> { });
+    }
+
+    // Queue a review according to the policy, returns false if the new review was dropped or shed
+    public boolean submit(Target<T> queue, T item) throws InterruptedException {
+        switch (policy) {
+            case BLOCK -> {
+                queue.put(item);
+                return true;
+            }
+            case DROP_NEWEST -> {
+                if (queue.offer(item)) {
+                    return true;
+                }
+                dropped.increment();
+                return false;
+            }
+            case DROP_OLDEST -> {
+                while (!queue.offer(item)) {
+                    T oldest = queue.poll();
+                    if (oldest != null) {
+                        dropped.increment();
+                        onDropped.accept(oldest);
+                    }
+                }
+                return true;
+            }
+            case SAMPLE -> {
+                if (queue.size() * 2 >= queue.capacity() && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+                    shed.increment();
+                    return false;
+                }
+                if (queue.offer(item)) {
+                    return true;
+                }
+                dropped.increment();
+                return false;
+            }
+            default -> throw new IllegalStateException("Unknown policy: " + policy);
+        }
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    // Number of reviews dropped because the queue was full since the last call
+    public long takeDropped() {
+        return dropped.sumThenReset();
+    }
+
+    // Number of reviews shed by sampling since the last call
+    public long takeShed() {
+        return shed.sumThenReset();
+    }
+}
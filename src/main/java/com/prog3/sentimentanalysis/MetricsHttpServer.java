@@ -0,0 +1,75 @@
+package com.prog3.sentimentanalysis;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *  Local HTTP endpoint that serves the last PipelineMetrics report as text on /metrics.
+* When a ResultsLog is kept, /sentiment?asin=<asin> or /sentiment?topic=<topic> answers with the
+* current sentiment distribution of a product or a topic.
+* It only listens on the loopback address and answers on a single thread.
+* */
+public class MetricsHttpServer implements AutoCloseable {
+    private final PipelineMetrics metrics;
+    private final HttpServer server;
+
+    public MetricsHttpServer(int port, PipelineMetrics metrics) throws IOException {
+        this.metrics = metrics;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", this::handle);
+        server.createContext("/sentiment", this::handleSentiment);
+        server.start();
+        System.out.println("Metrics served on http://localhost:" + server.getAddress().getPort() + "/metrics");
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        PipelineMetrics.Report report = metrics.getLastReport();
+        send(exchange, 200, report != null ? report.toText() : "");
+    }
+
+    // Counts of every sentiment class of the product or topic in the query, 404 if it has no results
+    private void handleSentiment(HttpExchange exchange) throws IOException {
+        ResultsLog resultsLog = ResultsLog.getShared();
+        String query = exchange.getRequestURI().getRawQuery();
+        int equals = query != null ? query.indexOf('=') : -1;
+        if (resultsLog == null || equals < 0) {
+            send(exchange, 404, "");
+            return;
+        }
+        String field = query.substring(0, equals);
+        String value = URLDecoder.decode(query.substring(equals + 1), StandardCharsets.UTF_8);
+        ResultsLog.Distribution distribution = field.equals("asin") ? resultsLog.productDistribution(value)
+                : field.equals("topic") ? resultsLog.topicDistribution(value) : null;
+        if (distribution == null) {
+            send(exchange, 404, "");
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < distribution.counts().length; i++) {
+            text.append("sentiment{").append(field).append("=\"").append(value).append("\",class=\"")
+                    .append(PipelineMetrics.sentimentClassName(i)).append("\"} ").append(distribution.counts()[i]).append('\n');
+        }
+        send(exchange, 200, text.toString());
+    }
+
+    private static void send(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
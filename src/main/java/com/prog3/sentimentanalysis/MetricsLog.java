@@ -0,0 +1,77 @@
+package com.prog3.sentimentanalysis;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ *  CSV log that is written on its own thread, so the caller never waits for the disk.
+* The file is opened once and rows are written through a buffer that is flushed
+* whenever no more rows are waiting. If the writer falls behind, new rows are dropped.
+* */
+public class MetricsLog implements AutoCloseable {
+    private static final int MAX_PENDING_ROWS = 1024;
+
+    private final Path file;
+    private final BlockingQueue<String> pendingRows = new ArrayBlockingQueue<>(MAX_PENDING_ROWS);
+    private final BufferedWriter writer;
+    private final Thread writerThread;
+
+    // Create or truncate the file and write the header
+    public MetricsLog(Path file, String header) throws IOException {
+        this.file = file;
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        writer.write(header);
+        writer.newLine();
+        writer.flush();
+        writerThread = new Thread(this::runWriter, "metrics-log");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    // Queue a row for the writer thread, returns false if it was dropped
+    public boolean write(String row) {
+        return pendingRows.offer(row);
+    }
+
+    @Override
+    public void close() {
+        writerThread.interrupt();
+    }
+
+    private void runWriter() {
+        List<String> rows = new ArrayList<>();
+        try {
+            while (true) {
+                rows.add(pendingRows.take());
+                pendingRows.drainTo(rows);
+                for (String row : rows) {
+                    writer.write(row);
+                    writer.newLine();
+                }
+                rows.clear();
+                writer.flush();
+            }
+        } catch (InterruptedException e) {
+            // Log closed, write what is left below
+        } catch (IOException e) {
+            System.err.println("Error writing " + file + ": " + e.getMessage());
+        }
+        try {
+            pendingRows.drainTo(rows);
+            for (String row : rows) {
+                writer.write(row);
+                writer.newLine();
+            }
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("Error closing " + file + ": " + e.getMessage());
+        }
+    }
+}
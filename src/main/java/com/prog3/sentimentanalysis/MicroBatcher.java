@@ -0,0 +1,150 @@
+package com.prog3.sentimentanalysis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  The purpose of this class is to send reviews through the CoreNLP pipeline in batches.
+* Submitted reviews are collected until the batch is full or the oldest review in it has waited
+* for the maximum wait time, then the whole batch is annotated with one call to the pipeline,
+* which spreads the documents over its own threads.
+* Every submitted review gets a future that is completed with its own sentiment.
+* A large batch size gives more throughput, a short maximum wait keeps the latency low.
+* When the queue is full, the overload policy decides which review is dropped, and its future is cancelled.
+* */
+public class MicroBatcher {
+    // Default maximum number of reviews in one batch
+    public static final int DEFAULT_BATCH_SIZE = 32;
+    // Default time the first review of a batch waits for more reviews
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 50;
+
+    // A review waiting to be analyzed, with the future of its result
+    private record PendingReview(String reviewText, CompletableFuture<String> result) {
+    }
+
+    private final SentimentAnalyzer analyzer;
+    private final int batchSize;
+    private final long maxWaitNanos;
+    // Number of threads the pipeline uses to annotate one batch
+    private final int annotatorThreads;
+    // Reviews waiting for the next batch
+    private final BlockingQueue<PendingReview> queue;
+    private final LoadShedder.Target<PendingReview> queueTarget;
+    // Applies the overload policy when the queue is full
+    private final LoadShedder<PendingReview> loadShedder;
+    private Thread batchThread;
+
+    public MicroBatcher(SentimentAnalyzer analyzer, int batchSize, long maxWaitMillis, int annotatorThreads, int queueCapacity,
+                        LoadShedder.Policy overloadPolicy, double sampleRate) {
+        if (batchSize < 1 || maxWaitMillis < 0 || annotatorThreads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Invalid batch configuration: size " + batchSize + ", wait " + maxWaitMillis
+                    + " ms, threads " + annotatorThreads + ", queue " + queueCapacity);
+        }
+        this.analyzer = analyzer;
+        this.batchSize = batchSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.annotatorThreads = annotatorThreads;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.queueTarget = LoadShedder.Target.of(queue);
+        this.loadShedder = new LoadShedder<>(overloadPolicy, sampleRate, pending -> pending.result().cancel(false));
+    }
+
+    // Start the thread that collects and analyzes the batches
+    public synchronized void start() {
+        if (batchThread != null) {
+            return;
+        }
+        batchThread = new Thread(this::runBatches, "sentiment-batcher");
+        batchThread.setDaemon(true);
+        batchThread.start();
+    }
+
+    // Add a review to the next batch, the future is cancelled if the overload policy drops the review
+    public CompletableFuture<String> submit(String reviewText) throws InterruptedException {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        if (!loadShedder.submit(queueTarget, new PendingReview(reviewText, result))) {
+            result.cancel(false);
+        }
+        return result;
+    }
+
+    public LoadShedder<?> getLoadShedder() {
+        return loadShedder;
+    }
+
+    // Number of reviews waiting for a batch
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    // Stop collecting batches, reviews still waiting are cancelled
+    public synchronized void shutdown() {
+        if (batchThread != null) {
+            batchThread.interrupt();
+            batchThread = null;
+        }
+        List<PendingReview> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (PendingReview pending : remaining) {
+            pending.result().cancel(false);
+        }
+    }
+
+    private void runBatches() {
+        List<PendingReview> batch = new ArrayList<>(batchSize);
+        List<String> texts = new ArrayList<>(batchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                collectBatch(batch);
+            } catch (InterruptedException e) {
+                // Finish the reviews already taken from the queue before stopping
+                Thread.currentThread().interrupt();
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            for (PendingReview pending : batch) {
+                texts.add(pending.reviewText());
+            }
+            try {
+                List<String> sentiments = analyzer.analyzeSentiments(texts, annotatorThreads);
+                // Results come back in the order of the batch, so each one belongs to the review at the same position
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).result().complete(sentiments.get(i));
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Error analyzing batch: " + e.getMessage());
+                for (PendingReview pending : batch) {
+                    pending.result().completeExceptionally(e);
+                }
+            }
+            batch.clear();
+            texts.clear();
+        }
+    }
+
+    // Wait for the first review, then add reviews until the batch is full or its deadline passes
+    private void collectBatch(List<PendingReview> batch) throws InterruptedException {
+        batch.add(queue.take());
+        long deadline = System.nanoTime() + maxWaitNanos;
+        while (batch.size() < batchSize) {
+            // Take what is already queued without waiting
+            if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            PendingReview next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+}
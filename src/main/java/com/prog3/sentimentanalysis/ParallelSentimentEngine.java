@@ -0,0 +1,158 @@
+package com.prog3.sentimentanalysis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ *  The purpose of this class is to run the sentiment analysis on a fixed number of worker threads.
+* Every worker owns its own SentimentAnalyzer, and all of them annotate with the one StanfordCoreNLP pipeline
+* of SharedPipelines, which only reads its models while annotating and is safe to use from many threads.
+* Reviews wait for a free worker in a bounded queue, so a burst of messages cannot create an unbounded
+* number of threads. Each result is handed to the result handler with its review, and the lane of its topic.
+* When the queue is full, the overload policy of the LoadShedder decides which review is dropped.
+* Reviews of several topics wait in the lanes of a WeightedFairQueue, so the workers are shared by the
+* topics in proportion to their weights, and the results of every topic are also recorded per topic.
+* The time from receiving each review to its result is recorded in the shared PipelineMetrics.
+* */
+public class ParallelSentimentEngine {
+    // Default number of workers, one for every available core
+    public static final int DEFAULT_WORKERS = Runtime.getRuntime().availableProcessors();
+    // Default number of reviews that can wait for a free worker
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /**
+     *  Receives the result of every review, with the index of the lane of its topic.
+    * */
+    public interface ResultHandler {
+        void accept(int lane, JsonParser.Review review, String sentiment);
+    }
+
+    // A review waiting for a worker, with its topic lane and the System.nanoTime of the moment it was received
+    private record Task(JsonParser.Review review, int lane, long receivedNanos) {
+    }
+
+    // Reviews waiting for a free worker, one lane per topic
+    private final WeightedFairQueue<Task> queue;
+    // Applies the overload policy when the queue is full
+    private final LoadShedder<Task> loadShedder;
+    // Creates the analyzer owned by each worker
+    private final Supplier<SentimentAnalyzer> analyzerFactory;
+    // Receives the review and its sentiment once a worker is done
+    private final ResultHandler resultHandler;
+    private final int numWorkers;
+    private final List<Thread> workers = new ArrayList<>();
+
+    public ParallelSentimentEngine(int numWorkers, int queueCapacity,
+                                   LoadShedder.Policy overloadPolicy, double sampleRate,
+                                   Supplier<SentimentAnalyzer> analyzerFactory,
+                                   BiConsumer<String, String> resultHandler) {
+        this(numWorkers, queueCapacity, overloadPolicy, sampleRate, List.of(new WeightedFairQueue.Lane("default", 1)),
+                analyzerFactory, (lane, review, sentiment) -> resultHandler.accept(review.reviewText(), sentiment));
+    }
+
+    // Engine shared by several topics, every topic lane can hold queueCapacity reviews
+    public ParallelSentimentEngine(int numWorkers, int queueCapacity,
+                                   LoadShedder.Policy overloadPolicy, double sampleRate,
+                                   List<WeightedFairQueue.Lane> lanes,
+                                   Supplier<SentimentAnalyzer> analyzerFactory,
+                                   ResultHandler resultHandler) {
+        if (numWorkers < 1) {
+            throw new IllegalArgumentException("Number of workers must be at least 1: " + numWorkers);
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1: " + queueCapacity);
+        }
+        this.numWorkers = numWorkers;
+        this.queue = new WeightedFairQueue<>(lanes, queueCapacity);
+        this.loadShedder = new LoadShedder<>(overloadPolicy, sampleRate);
+        this.analyzerFactory = analyzerFactory;
+        this.resultHandler = resultHandler;
+    }
+
+    // Start the worker threads
+    public synchronized void start() {
+        if (!workers.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < numWorkers; i++) {
+            Thread worker = new Thread(this::runWorker, "sentiment-worker-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    // Queue a review for analysis, returns false if the overload policy dropped it
+    public boolean submit(String reviewText) throws InterruptedException {
+        return submit(reviewText, System.nanoTime());
+    }
+
+    // Queue a review that was received at the given System.nanoTime
+    public boolean submit(String reviewText, long receivedNanos) throws InterruptedException {
+        return submit(0, reviewText, receivedNanos);
+    }
+
+    // Queue a review of the topic of a lane, the index of the lane is given by getLanes
+    public boolean submit(int lane, String reviewText, long receivedNanos) throws InterruptedException {
+        return submit(lane, new JsonParser.Review(reviewText, null, null, Double.NaN, 0), receivedNanos);
+    }
+
+    // Queue a review with the fields read from its message, they are handed back with the result
+    public boolean submit(int lane, JsonParser.Review review, long receivedNanos) throws InterruptedException {
+        return loadShedder.submit(queue.lane(lane), new Task(review, lane, receivedNanos));
+    }
+
+    public List<WeightedFairQueue.Lane> getLanes() {
+        return queue.getLanes();
+    }
+
+    public LoadShedder<?> getLoadShedder() {
+        return loadShedder;
+    }
+
+    // Number of reviews currently waiting for a worker
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getNumWorkers() {
+        return numWorkers;
+    }
+
+    // Stop the workers, reviews still in the queue are discarded
+    public synchronized void shutdown() {
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        workers.clear();
+        queue.clear();
+    }
+
+    // Worker loop, the analyzer is created on the worker thread and never leaves it
+    private void runWorker() {
+        SentimentAnalyzer analyzer = analyzerFactory.get();
+        PipelineMetrics metrics = PipelineMetrics.getShared();
+        List<WeightedFairQueue.Lane> lanes = queue.getLanes();
+        while (!Thread.currentThread().isInterrupted()) {
+            Task task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            String sentiment = null;
+            try {
+                sentiment = analyzer.analyzeSentiment(task.review().reviewText());
+            } catch (RuntimeException e) {
+                System.err.println("Error analyzing review: " + e.getMessage());
+            }
+            resultHandler.accept(task.lane(), task.review(), sentiment);
+            metrics.recordEndToEnd(task.receivedNanos());
+            if (lanes.size() > 1) {
+                metrics.recordTopic(lanes.get(task.lane()).name(), task.receivedNanos());
+            }
+        }
+    }
+}
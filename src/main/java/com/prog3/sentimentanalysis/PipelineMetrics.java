@@ -0,0 +1,318 @@
+package com.prog3.sentimentanalysis;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ *  Collects where the time goes while the application runs.
+* It keeps latency histograms of the JSON extraction, the NLP annotation and the whole way from
+* receiving a message to its result, the number of reviews of each sentiment class, the depth of
+* the registered queues, the throughput and latency of every registered topic and the pauses of the garbage collector.
+* Once per second the values of the last interval are taken as a Report, which is printed,
+* written to the CSV log and served by the metrics endpoint.
+* One shared instance is used by the whole JVM, like the SentimentCache.
+* */
+public class PipelineMetrics {
+    // Sentiment classes of CoreNLP, in the order of the CSV columns
+    private static final String[] SENTIMENT_CLASSES = {"Very negative", "Negative", "Neutral", "Positive", "Very positive"};
+
+    private static final PipelineMetrics shared = new PipelineMetrics();
+
+    /**
+     *  Values of one interval. Percentiles are in microseconds, GC pauses in milliseconds.
+    * */
+    public record Report(long timeMillis, long reviews, long dropped, long shed, long duplicates,
+                         LatencyHistogram.Snapshot extract, LatencyHistogram.Snapshot annotate,
+                         LatencyHistogram.Snapshot endToEnd, Map<String, Integer> queueDepths,
+                         long[] sentimentCounts, long gcPauses, double gcPauseMillis, double gcMaxPauseMillis,
+                         Map<String, TopicReport> topics) {
+
+        public String toCsvRow() {
+            StringBuilder row = new StringBuilder();
+            row.append(timeMillis).append(',').append(reviews).append(',').append(dropped).append(',').append(shed)
+                    .append(',').append(duplicates);
+            for (LatencyHistogram.Snapshot snapshot : new LatencyHistogram.Snapshot[]{extract, annotate, endToEnd}) {
+                row.append(',').append(snapshot.getPercentile(0.5))
+                        .append(',').append(snapshot.getPercentile(0.99))
+                        .append(',').append(snapshot.getPercentile(0.999));
+            }
+            for (int depth : queueDepths.values()) {
+                row.append(',').append(depth);
+            }
+            for (long count : sentimentCounts) {
+                row.append(',').append(count);
+            }
+            row.append(',').append(gcPauses)
+                    .append(',').append(String.format("%.3f", gcPauseMillis))
+                    .append(',').append(String.format("%.3f", gcMaxPauseMillis));
+            for (TopicReport topic : topics.values()) {
+                row.append(',').append(topic.reviews())
+                        .append(',').append(topic.latency().getPercentile(0.5))
+                        .append(',').append(topic.latency().getPercentile(0.99));
+            }
+            return row.toString();
+        }
+
+        // Text of the metrics endpoint, one "name value" pair per line
+        public String toText() {
+            StringBuilder text = new StringBuilder();
+            text.append("time_ms ").append(timeMillis).append('\n');
+            text.append("reviews ").append(reviews).append('\n');
+            text.append("dropped ").append(dropped).append('\n');
+            text.append("shed ").append(shed).append('\n');
+            text.append("duplicates ").append(duplicates).append('\n');
+            appendLatency(text, "extract", extract);
+            appendLatency(text, "annotate", annotate);
+            appendLatency(text, "end_to_end", endToEnd);
+            for (Map.Entry<String, Integer> queue : queueDepths.entrySet()) {
+                text.append("queue_depth{queue=\"").append(queue.getKey()).append("\"} ").append(queue.getValue()).append('\n');
+            }
+            for (int i = 0; i < sentimentCounts.length; i++) {
+                text.append("sentiment{class=\"").append(classNameOf(i)).append("\"} ").append(sentimentCounts[i]).append('\n');
+            }
+            text.append("gc_pauses ").append(gcPauses).append('\n');
+            text.append("gc_pause_ms ").append(String.format("%.3f", gcPauseMillis)).append('\n');
+            text.append("gc_max_pause_ms ").append(String.format("%.3f", gcMaxPauseMillis)).append('\n');
+            for (Map.Entry<String, TopicReport> topic : topics.entrySet()) {
+                String label = "{topic=\"" + topic.getKey() + "\"";
+                LatencyHistogram.Snapshot latency = topic.getValue().latency();
+                text.append("topic_reviews").append(label).append("} ").append(topic.getValue().reviews()).append('\n');
+                text.append("topic_latency_us").append(label).append(",quantile=\"0.5\"} ").append(latency.getPercentile(0.5)).append('\n');
+                text.append("topic_latency_us").append(label).append(",quantile=\"0.99\"} ").append(latency.getPercentile(0.99)).append('\n');
+            }
+            return text.toString();
+        }
+
+        // Latency line printed every second
+        public String summary() {
+            StringBuilder summary = new StringBuilder("Latency extract " + extract + ", annotate " + annotate
+                    + ", end-to-end " + endToEnd + "; GC " + gcPauses + " pauses, " + String.format("%.1f", gcPauseMillis) + " ms");
+            String separator = "\nTopics: ";
+            for (Map.Entry<String, TopicReport> topic : topics.entrySet()) {
+                summary.append(separator).append(topic.getKey()).append(' ').append(topic.getValue().reviews())
+                        .append(" (p99 ").append(topic.getValue().latency().getPercentile(0.99)).append(" us)");
+                separator = ", ";
+            }
+            return summary.toString();
+        }
+
+        private static void appendLatency(StringBuilder text, String stage, LatencyHistogram.Snapshot snapshot) {
+            text.append(stage).append("_count ").append(snapshot.getCount()).append('\n');
+            text.append(stage).append("_us{quantile=\"0.5\"} ").append(snapshot.getPercentile(0.5)).append('\n');
+            text.append(stage).append("_us{quantile=\"0.99\"} ").append(snapshot.getPercentile(0.99)).append('\n');
+            text.append(stage).append("_us{quantile=\"0.999\"} ").append(snapshot.getPercentile(0.999)).append('\n');
+            text.append(stage).append("_us_max ").append(snapshot.getMax()).append('\n');
+        }
+    }
+
+    /**
+     *  Reviews of one topic in an interval and their latency, in microseconds.
+    * */
+    public record TopicReport(long reviews, LatencyHistogram.Snapshot latency) {
+    }
+
+    // Results and latency of one registered topic
+    private record TopicStats(LongAdder reviews, LatencyHistogram latency) {
+    }
+
+    private final LatencyHistogram extract = new LatencyHistogram();
+    private final LatencyHistogram annotate = new LatencyHistogram();
+    private final LatencyHistogram endToEnd = new LatencyHistogram();
+    // One counter for every sentiment class and a last one for reviews without a sentiment
+    private final LongAdder[] sentimentCounts = new LongAdder[SENTIMENT_CLASSES.length + 1];
+    // Queues whose depth is reported, in the order of the CSV columns
+    private final Map<String, IntSupplier> queues = new LinkedHashMap<>();
+    // Topics whose results are reported on their own, in the order of the CSV columns
+    private final Map<String, TopicStats> topics = new LinkedHashMap<>();
+    private final LongAdder duplicates = new LongAdder();
+    private final AtomicLong gcPauses = new AtomicLong();
+    private final AtomicLong gcPauseMicros = new AtomicLong();
+    private final AtomicLong gcMaxPauseMicros = new AtomicLong();
+    private boolean gcMonitored;
+    private volatile Report lastReport;
+
+    public PipelineMetrics() {
+        for (int i = 0; i < sentimentCounts.length; i++) {
+            sentimentCounts[i] = new LongAdder();
+        }
+    }
+
+    public static PipelineMetrics getShared() {
+        return shared;
+    }
+
+    // Time spent getting the review out of a message, from a System.nanoTime taken before the extraction
+    public void recordExtract(long startNanos) {
+        extract.recordNanos(System.nanoTime() - startNanos);
+    }
+
+    // Time spent in the NLP pipeline for one review
+    public void recordAnnotate(long nanos) {
+        annotate.recordNanos(nanos);
+    }
+
+    // Time from receiving a message to its result, from the System.nanoTime taken when it was received
+    public void recordEndToEnd(long receivedNanos) {
+        endToEnd.recordNanos(System.nanoTime() - receivedNanos);
+    }
+
+    // A review that was skipped because it was received before
+    public void recordDuplicate() {
+        duplicates.increment();
+    }
+
+    // Result of a review of a registered topic, from the System.nanoTime taken when it was received
+    public void recordTopic(String topic, long receivedNanos) {
+        TopicStats stats = topics.get(topic);
+        if (stats != null) {
+            stats.reviews().increment();
+            stats.latency().recordNanos(System.nanoTime() - receivedNanos);
+        }
+    }
+
+    public void recordSentiment(String sentiment) {
+        sentimentCounts[indexOf(sentiment)].increment();
+    }
+
+    // Add the class counts of another process, in the order of takeSentimentCounts
+    public void addSentimentCounts(int[] counts, int offset) {
+        for (int i = 0; i < sentimentCounts.length; i++) {
+            sentimentCounts[i].add(counts[offset + i]);
+        }
+    }
+
+    // Number of reviews of each class since the last call, one more element for reviews without a sentiment
+    public int[] takeSentimentCounts() {
+        int[] counts = new int[sentimentCounts.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = (int) sentimentCounts[i].sumThenReset();
+        }
+        return counts;
+    }
+
+    public static int sentimentClassCount() {
+        return SENTIMENT_CLASSES.length + 1;
+    }
+
+    // Index of a sentiment class in the order of sentimentClassCount, the last one for reviews without a sentiment
+    public static int sentimentClassIndex(String sentiment) {
+        return indexOf(sentiment);
+    }
+
+    public static String sentimentClassName(int index) {
+        return classNameOf(index);
+    }
+
+    // Report the depth of a queue, must be called before the header of the CSV log is written
+    public synchronized void registerQueue(String name, IntSupplier depth) {
+        queues.put(name, depth);
+    }
+
+    // Report the results of a topic on their own, must be called before the header of the CSV log is written
+    // and before any result of the topic is recorded
+    public synchronized void registerTopic(String topic) {
+        topics.putIfAbsent(topic, new TopicStats(new LongAdder(), new LatencyHistogram()));
+    }
+
+    // Record the pauses of every garbage collector of the JVM, concurrent cycles are not pauses and left out
+    public synchronized void monitorGarbageCollection() {
+        if (gcMonitored) {
+            return;
+        }
+        gcMonitored = true;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (!(collector instanceof NotificationEmitter emitter)) {
+                continue;
+            }
+            emitter.addNotificationListener((notification, handback) -> {
+                if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                    return;
+                }
+                GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                String name = info.getGcName();
+                if (name.contains("Concurrent") || name.contains("Cycles")) {
+                    return;
+                }
+                long micros = info.getGcInfo().getDuration() * 1000;
+                gcPauses.incrementAndGet();
+                gcPauseMicros.addAndGet(micros);
+                gcMaxPauseMicros.accumulateAndGet(micros, Math::max);
+            }, null, null);
+        }
+    }
+
+    public synchronized String csvHeader() {
+        StringBuilder header = new StringBuilder("time_ms,reviews,dropped,shed,duplicates");
+        for (String stage : new String[]{"extract", "annotate", "e2e"}) {
+            header.append(',').append(stage).append("_p50_us,").append(stage).append("_p99_us,")
+                    .append(stage).append("_p999_us");
+        }
+        for (String queue : queues.keySet()) {
+            header.append(',').append(queue).append("_depth");
+        }
+        for (int i = 0; i < sentimentCounts.length; i++) {
+            header.append(',').append(classNameOf(i).toLowerCase().replace(' ', '_'));
+        }
+        header.append(",gc_pauses,gc_pause_ms,gc_max_pause_ms");
+        for (String topic : topics.keySet()) {
+            String column = topic.replace('-', '_');
+            header.append(',').append(column).append("_reviews,").append(column).append("_p50_us,")
+                    .append(column).append("_p99_us");
+        }
+        return header.toString();
+    }
+
+    // Take the values of the interval since the last report, the counts are the ones of the caller
+    public synchronized Report takeReport(long reviews, long dropped, long shed) {
+        Map<String, Integer> depths = new LinkedHashMap<>();
+        for (Map.Entry<String, IntSupplier> queue : queues.entrySet()) {
+            depths.put(queue.getKey(), queue.getValue().getAsInt());
+        }
+        int[] counts = takeSentimentCounts();
+        long[] sentiments = new long[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            sentiments[i] = counts[i];
+        }
+        Map<String, TopicReport> topicReports = new LinkedHashMap<>();
+        for (Map.Entry<String, TopicStats> topic : topics.entrySet()) {
+            topicReports.put(topic.getKey(), new TopicReport(topic.getValue().reviews().sumThenReset(),
+                    topic.getValue().latency().snapshotAndReset()));
+        }
+        Report report = new Report(System.currentTimeMillis(), reviews, dropped, shed, duplicates.sumThenReset(),
+                extract.snapshotAndReset(), annotate.snapshotAndReset(), endToEnd.snapshotAndReset(), depths,
+                sentiments, gcPauses.getAndSet(0), gcPauseMicros.getAndSet(0) / 1000.0,
+                gcMaxPauseMicros.getAndSet(0) / 1000.0, topicReports);
+        lastReport = report;
+        return report;
+    }
+
+    // Report of the last interval, null before the first one
+    public Report getLastReport() {
+        return lastReport;
+    }
+
+    private static int indexOf(String sentiment) {
+        if (sentiment != null) {
+            for (int i = 0; i < SENTIMENT_CLASSES.length; i++) {
+                if (SENTIMENT_CLASSES[i].equalsIgnoreCase(sentiment)) {
+                    return i;
+                }
+            }
+        }
+        return SENTIMENT_CLASSES.length;
+    }
+
+    private static String classNameOf(int index) {
+        return index < SENTIMENT_CLASSES.length ? SENTIMENT_CLASSES[index] : "None";
+    }
+}
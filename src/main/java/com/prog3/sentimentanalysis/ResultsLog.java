@@ -0,0 +1,561 @@
+package com.prog3.sentimentanalysis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ *  Keeps the result of every analyzed review, and how the sentiments of every product and topic add up.
+* Every result is appended as a compact binary record to a log of memory-mapped segment files: the topic,
+* the sentiment class, the overall rating, the review time, the ASIN and the reviewer, about 35 bytes a review.
+* A segment starts with the names of its topics, and a new one is started when it is full or the log is opened again.
+* At the same time the count of every sentiment class is added up per ASIN and per topic in memory. The usual
+* ten character ASIN is packed into a long, which is the key of an open-addressing table of counts, so no
+* object is kept per product and the distribution of a product is read without scanning the log.
+* A snapshot of the counts, with the position in the log they include, is written periodically. When the log
+* is opened again the snapshot is loaded and only the records after it are read.
+* One shared instance is used by all modes of the JVM, like the DuplicateFilter, null when no log is kept.
+* */
+public class ResultsLog implements AutoCloseable {
+    // Default size of a segment file
+    public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+    // Default time between two snapshots of the counts
+    public static final int DEFAULT_SNAPSHOT_SECONDS = 60;
+    // "RSL1" and "RSS1", catch files that are not segments or snapshots
+    private static final int SEGMENT_MAGIC = 0x52534C31;
+    private static final int SNAPSHOT_MAGIC = 0x52535331;
+    private static final String SNAPSHOT_FILE = "results.snapshot";
+    private static final String SEGMENT_PREFIX = "results-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    // A record starts with this byte, the zeros after the last record end the segment
+    private static final byte RECORD = 1;
+    // Marker, topic, class, rating, time and the lengths of the ASIN and the reviewer
+    private static final int FIXED_BYTES = 4 + Integer.BYTES + 2;
+    private static final int MAX_FIELD_BYTES = 255;
+    private static final int NO_RATING = 0xFF;
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    /**
+     *  One record of the log.
+    * Fields that were not in the review are null for text, NaN for overall and 0 for the time.
+    * */
+    public record Result(String topic, String asin, String reviewerID, long unixReviewTime, String sentiment,
+                         double overall) {
+    }
+
+    /**
+     *  Number of reviews of every sentiment class, in the order of PipelineMetrics.
+    * */
+    public record Distribution(long[] counts) {
+        public long total() {
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            return total;
+        }
+
+        public long count(String sentiment) {
+            return counts[PipelineMetrics.sentimentClassIndex(sentiment)];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < counts.length; i++) {
+                text.append(PipelineMetrics.sentimentClassName(i)).append(' ').append(counts[i]).append(", ");
+            }
+            return text.append(total()).append(" reviews").toString();
+        }
+    }
+
+    // Log shared by every mode in this JVM, null when results are not kept
+    private static volatile ResultsLog shared;
+
+    private final Path directory;
+    private final List<String> topics;
+    private final int segmentBytes;
+    private final int classes = PipelineMetrics.sentimentClassCount();
+    // Counts of every topic by name, including topics of earlier runs, and the counts of this run's topics by index
+    private final Map<String, long[]> topicCounts = new LinkedHashMap<>();
+    private final long[][] currentTopicCounts;
+    private ProductTable products;
+    private long records;
+    private long segmentNumber;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    // Only one snapshot is written at a time
+    private final Object snapshotLock = new Object();
+
+    // Open the log in a directory, loading the snapshot and the records after it
+    public ResultsLog(Path directory, List<String> topics, int segmentBytes) throws IOException {
+        if (topics.isEmpty() || topics.size() > MAX_FIELD_BYTES) {
+            throw new IllegalArgumentException("Invalid number of topics: " + topics.size());
+        }
+        if (segmentBytes < 4096) {
+            throw new IllegalArgumentException("Segment size must be at least 4096 bytes: " + segmentBytes);
+        }
+        this.directory = directory;
+        this.topics = List.copyOf(topics);
+        this.segmentBytes = segmentBytes;
+        this.products = new ProductTable(classes, 1024);
+        Files.createDirectories(directory);
+        long[] position = loadSnapshot();
+        long lastSegment = replay(position[0], (int) position[1]);
+        this.currentTopicCounts = new long[topics.size()][];
+        for (int i = 0; i < topics.size(); i++) {
+            currentTopicCounts[i] = topicCounts.computeIfAbsent(topics.get(i), name -> new long[classes]);
+        }
+        startSegment(Math.max(lastSegment, position[0]) + 1);
+    }
+
+    public static ResultsLog getShared() {
+        return shared;
+    }
+
+    // Open the shared log in a directory, a null directory keeps no results
+    public static void configureShared(Path directory, List<String> topics) throws IOException {
+        shared = directory != null ? new ResultsLog(directory, topics, DEFAULT_SEGMENT_BYTES) : null;
+    }
+
+    // Append the result of a review of the topic with the given index, and count it
+    public synchronized void append(int topic, JsonParser.Review review, String sentiment) {
+        if (buffer == null) {
+            return;
+        }
+        byte[] asin = fieldBytes(review.asin());
+        byte[] reviewer = fieldBytes(review.reviewerID());
+        int sentimentClass = PipelineMetrics.sentimentClassIndex(sentiment);
+        if (buffer.remaining() < FIXED_BYTES + asin.length + reviewer.length) {
+            try {
+                finishSegment();
+                startSegment(segmentNumber + 1);
+            } catch (IOException e) {
+                System.err.println("Cannot start a new results segment: " + e.getMessage());
+                buffer = null;
+                return;
+            }
+        }
+        // The marker is written last, so a record cut off by a crash is never read
+        int start = buffer.position();
+        buffer.position(start + 1);
+        buffer.put((byte) topic).put((byte) sentimentClass).put(ratingByte(review.overall()))
+                .putInt((int) Math.max(review.unixReviewTime(), 0))
+                .put((byte) asin.length).put(asin).put((byte) reviewer.length).put(reviewer);
+        buffer.put(start, RECORD);
+        count(currentTopicCounts[topic], review.asin(), sentimentClass);
+    }
+
+    // Current counts of a product, null if no review of it was logged
+    public synchronized Distribution productDistribution(String asin) {
+        if (asin == null || asin.isEmpty()) {
+            return null;
+        }
+        int slot = products.find(productKey(asin));
+        return slot < 0 ? null : new Distribution(products.countsOf(slot));
+    }
+
+    // Current counts of a topic, including earlier runs, null if no review of it was logged
+    public synchronized Distribution topicDistribution(String topic) {
+        long[] counts = topicCounts.get(topic);
+        return counts == null ? null : new Distribution(counts.clone());
+    }
+
+    public synchronized long getRecords() {
+        return records;
+    }
+
+    public synchronized int getProducts() {
+        return products.size;
+    }
+
+    public List<String> getTopics() {
+        return topics;
+    }
+
+    // Write the counts and the position of the log they include, the old snapshot is replaced at once
+    public void snapshot() {
+        synchronized (snapshotLock) {
+            MappedByteBuffer segment;
+            long segmentAtSnapshot;
+            int position;
+            long recordsAtSnapshot;
+            Map<String, long[]> topicsAtSnapshot = new LinkedHashMap<>();
+            ProductTable productsAtSnapshot;
+            // Copy the counts while appends wait, the disk is written after they go on
+            synchronized (this) {
+                if (buffer == null) {
+                    return;
+                }
+                segment = buffer;
+                segmentAtSnapshot = segmentNumber;
+                position = buffer.position();
+                recordsAtSnapshot = records;
+                topicCounts.forEach((name, counts) -> topicsAtSnapshot.put(name, counts.clone()));
+                productsAtSnapshot = products.copy();
+            }
+            // The records a snapshot includes must be on disk before the snapshot is
+            segment.force(0, position);
+            Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(classes);
+                out.writeLong(segmentAtSnapshot);
+                out.writeInt(position);
+                out.writeLong(recordsAtSnapshot);
+                out.writeInt(topicsAtSnapshot.size());
+                for (Map.Entry<String, long[]> entry : topicsAtSnapshot.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    for (long count : entry.getValue()) {
+                        out.writeLong(count);
+                    }
+                }
+                out.writeInt(productsAtSnapshot.size);
+                for (int slot = 0; slot < productsAtSnapshot.keys.length; slot++) {
+                    if (productsAtSnapshot.keys[slot] != EMPTY) {
+                        out.writeLong(productsAtSnapshot.keys[slot]);
+                        for (int i = 0; i < classes; i++) {
+                            out.writeInt(productsAtSnapshot.counts[slot * classes + i]);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Cannot write the results snapshot: " + e.getMessage());
+                return;
+            }
+            try {
+                Files.move(temporary, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                System.err.println("Cannot replace the results snapshot: " + e.getMessage());
+            }
+        }
+    }
+
+    // Write a last snapshot and close the segment, later results are not logged
+    @Override
+    public void close() {
+        snapshot();
+        synchronized (this) {
+            if (buffer == null) {
+                return;
+            }
+            try {
+                finishSegment();
+            } catch (IOException e) {
+                System.err.println("Error closing the results log: " + e.getMessage());
+            }
+            buffer = null;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Results log: %d reviews of %d products, segment %d at %d of %d bytes",
+                records, products.size, segmentNumber, buffer != null ? buffer.position() : 0, segmentBytes);
+    }
+
+    // Read every record of the segments in a directory, in the order they were written
+    public static void scan(Path directory, Consumer<Result> consumer) throws IOException {
+        for (Path segment : segments(directory)) {
+            scanSegment(segment, 0, consumer);
+        }
+    }
+
+    // Key of an ASIN, the usual ten digits and capital letters are packed exactly in base 36,
+    // any other ASIN is hashed to a negative key
+    static long productKey(String asin) {
+        if (asin.length() == 10) {
+            long key = 0;
+            int i = 0;
+            for (; i < asin.length(); i++) {
+                char c = asin.charAt(i);
+                int digit = c >= '0' && c <= '9' ? c - '0' : c >= 'A' && c <= 'Z' ? c - 'A' + 10 : -1;
+                if (digit < 0) {
+                    break;
+                }
+                key = key * 36 + digit;
+            }
+            if (i == asin.length()) {
+                return key;
+            }
+        }
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < asin.length(); i++) {
+            hash = (hash ^ asin.charAt(i)) * 0x100000001b3L;
+        }
+        hash |= Long.MIN_VALUE;
+        return hash == EMPTY ? hash + 1 : hash;
+    }
+
+    private void count(long[] topic, String asin, int sentimentClass) {
+        topic[sentimentClass]++;
+        if (asin != null && !asin.isEmpty()) {
+            products.add(productKey(asin), sentimentClass);
+        }
+        records++;
+    }
+
+    // Load the counts of the snapshot, returns the segment and the position in it that the snapshot includes
+    private long[] loadSnapshot() throws IOException {
+        Path file = directory.resolve(SNAPSHOT_FILE);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != classes) {
+                System.err.println("Ignoring " + file + ", it is not a results snapshot of this version.");
+                return new long[] {0, 0};
+            }
+            long segment = in.readLong();
+            int position = in.readInt();
+            records = in.readLong();
+            int topicCount = in.readInt();
+            for (int t = 0; t < topicCount; t++) {
+                long[] counts = new long[classes];
+                String name = in.readUTF();
+                for (int i = 0; i < classes; i++) {
+                    counts[i] = in.readLong();
+                }
+                topicCounts.put(name, counts);
+            }
+            int productCount = in.readInt();
+            products = new ProductTable(classes, Math.max(1024, productCount * 2));
+            for (int p = 0; p < productCount; p++) {
+                int slot = products.insert(in.readLong());
+                for (int i = 0; i < classes; i++) {
+                    products.counts[slot * classes + i] = in.readInt();
+                }
+            }
+            System.out.println("Loaded results snapshot of " + records + " reviews and " + productCount + " products.");
+            return new long[] {segment, position};
+        } catch (NoSuchFileException e) {
+            return new long[] {0, 0};
+        }
+    }
+
+    // Count the records after the position of the snapshot, returns the number of the last segment
+    private long replay(long fromSegment, int fromPosition) throws IOException {
+        long lastSegment = 0;
+        long replayed = records;
+        for (Path segment : segments(directory)) {
+            long number = segmentNumber(segment);
+            lastSegment = number;
+            if (number < fromSegment) {
+                continue;
+            }
+            scanSegment(segment, number == fromSegment ? fromPosition : 0, result -> {
+                int sentimentClass = PipelineMetrics.sentimentClassIndex(result.sentiment());
+                count(topicCounts.computeIfAbsent(result.topic(), name -> new long[classes]), result.asin(), sentimentClass);
+            });
+        }
+        if (records > replayed) {
+            System.out.println("Read " + (records - replayed) + " results logged after the snapshot.");
+        }
+        return lastSegment;
+    }
+
+    private void startSegment(long number) throws IOException {
+        Path file = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segmentNumber = number;
+        buffer.putInt(SEGMENT_MAGIC);
+        buffer.put((byte) topics.size());
+        for (String topic : topics) {
+            byte[] name = fieldBytes(topic);
+            buffer.put((byte) name.length).put(name);
+        }
+    }
+
+    // Write the segment to disk and cut off the space it did not use
+    private void finishSegment() throws IOException {
+        int position = buffer.position();
+        buffer.force();
+        try {
+            channel.truncate(position);
+        } catch (IOException e) {
+            // Some systems cannot shorten a mapped file, the zeros after the last record end it as well
+        }
+        channel.close();
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> segmentNumber(file) > 0)
+                    .sorted((a, b) -> Long.compare(segmentNumber(a), segmentNumber(b)))
+                    .toList();
+        }
+    }
+
+    // Number of a segment file, 0 if the file is not a segment
+    private static long segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // Read the records of a segment from a position, 0 reads all of them
+    private static void scanSegment(Path file, int from, Consumer<Result> consumer) throws IOException {
+        try (FileChannel segment = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer bytes = segment.map(FileChannel.MapMode.READ_ONLY, 0, segment.size());
+            if (bytes.remaining() < Integer.BYTES + 1 || bytes.getInt() != SEGMENT_MAGIC) {
+                throw new IOException(file + " is not a results segment");
+            }
+            List<String> names = new ArrayList<>();
+            int topicCount = Byte.toUnsignedInt(bytes.get());
+            for (int t = 0; t < topicCount; t++) {
+                names.add(readField(bytes));
+            }
+            if (from > bytes.position()) {
+                bytes.position(from);
+            }
+            while (bytes.remaining() >= FIXED_BYTES && bytes.get() == RECORD) {
+                int topic = Byte.toUnsignedInt(bytes.get());
+                int sentimentClass = bytes.get();
+                int rating = Byte.toUnsignedInt(bytes.get());
+                long time = Integer.toUnsignedLong(bytes.getInt());
+                String asin = readField(bytes);
+                String reviewer = readField(bytes);
+                consumer.accept(new Result(topic < names.size() ? names.get(topic) : null, asin, reviewer, time,
+                        PipelineMetrics.sentimentClassName(sentimentClass), rating == NO_RATING ? Double.NaN : rating / 2.0));
+            }
+        }
+    }
+
+    private static String readField(MappedByteBuffer bytes) {
+        byte[] field = new byte[Byte.toUnsignedInt(bytes.get())];
+        bytes.get(field);
+        return field.length == 0 ? null : new String(field, StandardCharsets.UTF_8);
+    }
+
+    // UTF-8 bytes of a field, cut to the length a record can hold, a missing field has none
+    private static byte[] fieldBytes(String field) {
+        if (field == null) {
+            return new byte[0];
+        }
+        byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+        return bytes.length > MAX_FIELD_BYTES ? Arrays.copyOf(bytes, MAX_FIELD_BYTES) : bytes;
+    }
+
+    // Overall rating in half stars, which covers the ratings of the reviews
+    private static byte ratingByte(double overall) {
+        if (Double.isNaN(overall)) {
+            return (byte) NO_RATING;
+        }
+        return (byte) Math.min(Math.max(Math.round(overall * 2), 0), NO_RATING - 1);
+    }
+
+    /**
+     *  Open-addressing table from a product key to the counts of its sentiment classes.
+    * The counts of all products are in one array, the counts of the product in a slot start at slot * classes.
+    * */
+    private static final class ProductTable {
+        private final int classes;
+        private long[] keys;
+        private int[] counts;
+        private int size;
+
+        private ProductTable(int classes, int capacity) {
+            this.classes = classes;
+            int slots = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+            this.keys = new long[slots];
+            this.counts = new int[slots * classes];
+            Arrays.fill(keys, EMPTY);
+        }
+
+        private void add(long key, int sentimentClass) {
+            counts[insert(key) * classes + sentimentClass]++;
+        }
+
+        // Slot of a key, -1 if it is not in the table
+        private int find(long key) {
+            int mask = keys.length - 1;
+            for (int slot = slotOf(key, mask); ; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+                if (keys[slot] == EMPTY) {
+                    return -1;
+                }
+            }
+        }
+
+        // Slot of a key, which is added if it is not in the table yet
+        private int insert(long key) {
+            int mask = keys.length - 1;
+            int slot = slotOf(key, mask);
+            while (keys[slot] != key) {
+                if (keys[slot] == EMPTY) {
+                    if ((size + 1) * 4L > keys.length * 3L) {
+                        grow();
+                        return insert(key);
+                    }
+                    keys[slot] = key;
+                    size++;
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private long[] countsOf(int slot) {
+            long[] result = new long[classes];
+            for (int i = 0; i < classes; i++) {
+                result[i] = counts[slot * classes + i];
+            }
+            return result;
+        }
+
+        private ProductTable copy() {
+            ProductTable copy = new ProductTable(classes, 2);
+            copy.keys = keys.clone();
+            copy.counts = counts.clone();
+            copy.size = size;
+            return copy;
+        }
+
+        // Double the slots and move every product to its slot in the larger table
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new long[oldKeys.length * 2];
+            counts = new int[keys.length * classes];
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != EMPTY) {
+                    System.arraycopy(oldCounts, slot * classes, counts, insert(oldKeys[slot]) * classes, classes);
+                }
+            }
+        }
+
+        private static int slotOf(long key, int mask) {
+            return (int) ((key * 0x9e3779b97f4a7c15L) >>> 32) & mask;
+        }
+    }
+}
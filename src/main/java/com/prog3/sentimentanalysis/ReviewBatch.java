@@ -0,0 +1,173 @@
+package com.prog3.sentimentanalysis;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *  Wire format of the reviews the MPI master sends to a worker, several reviews per message.
+* A message starts with a header of a magic number, the sequence id of the batch, the sequence id
+* of its first review and the number of reviews. Every review follows as its length in bytes and
+* its UTF-8 bytes, so reviews of any length arrive whole.
+* The master fills one Writer again and again, its buffer only grows when a batch does not fit,
+* and the worker decodes the bytes it received into a Batch. A Writer can also fill a direct buffer,
+* which a socket channel writes without copying it first.
+* */
+public class ReviewBatch {
+    // "RVB1", catches messages that are not batches
+    private static final int MAGIC = 0x52564231;
+    public static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int COUNT_OFFSET = HEADER_BYTES - Integer.BYTES;
+
+    /**
+     *  Reviews of one message. Batches to one worker are numbered from 0 without gaps,
+    * reviews are numbered in the order the master received them, across all workers.
+    * */
+    public record Batch(long batchSequence, long firstReviewSequence, List<String> reviews) {
+    }
+
+    /**
+     *  Encodes batches into one reusable buffer, used by one thread.
+    * The heap buffer is sent as an array by MPI, the direct buffer as a ByteBuffer by a channel.
+    * */
+    public static final class Writer {
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final boolean direct;
+        private ByteBuffer buffer;
+        private int count;
+
+        public Writer(int initialBytes) {
+            this(initialBytes, false);
+        }
+
+        public Writer(int initialBytes, boolean direct) {
+            this.direct = direct;
+            buffer = allocate(Math.max(initialBytes, HEADER_BYTES));
+        }
+
+        // Start a new batch, the reviews of the previous one are discarded
+        public void begin(long batchSequence, long firstReviewSequence) {
+            buffer.clear();
+            buffer.putInt(MAGIC).putLong(batchSequence).putLong(firstReviewSequence).putInt(0);
+            count = 0;
+        }
+
+        public void add(String review) {
+            int lengthPosition = buffer.position();
+            ensureRemaining(Integer.BYTES + review.length());
+            buffer.position(lengthPosition + Integer.BYTES);
+            // Encode straight into the buffer, growing it when a review has more bytes than characters
+            CharBuffer chars = CharBuffer.wrap(review);
+            encoder.reset();
+            while (encoder.encode(chars, buffer, true).isOverflow()) {
+                grow(buffer.capacity());
+            }
+            while (encoder.flush(buffer).isOverflow()) {
+                grow(buffer.capacity());
+            }
+            buffer.putInt(lengthPosition, buffer.position() - lengthPosition - Integer.BYTES);
+            count++;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        // Complete the header and return the number of bytes to send from getBuffer
+        public int finish() {
+            buffer.putInt(COUNT_OFFSET, count);
+            return buffer.position();
+        }
+
+        // Backing array of the batch, valid until the next call to begin or add, only for heap writers
+        public byte[] getBuffer() {
+            return buffer.array();
+        }
+
+        // The finished batch as a buffer of its own position, valid until the next call to begin or add
+        public ByteBuffer getByteBuffer() {
+            return buffer.duplicate().flip();
+        }
+
+        public int getCapacity() {
+            return buffer.capacity();
+        }
+
+        private void ensureRemaining(int bytes) {
+            if (buffer.remaining() < bytes) {
+                grow(bytes - buffer.remaining());
+            }
+        }
+
+        // Grow the buffer by at least the given number of bytes, keeping what was written
+        private void grow(int bytes) {
+            int position = buffer.position();
+            long capacity = Math.max((long) buffer.capacity() * 2, (long) buffer.capacity() + bytes);
+            if (capacity > Integer.MAX_VALUE - 8) {
+                throw new BufferOverflowException();
+            }
+            if (direct) {
+                ByteBuffer grown = allocate((int) capacity);
+                grown.put(buffer.flip());
+                buffer = grown;
+            } else {
+                buffer = ByteBuffer.wrap(Arrays.copyOf(buffer.array(), (int) capacity));
+                buffer.position(position);
+            }
+        }
+
+        private ByteBuffer allocate(int capacity) {
+            return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        }
+    }
+
+    // Decode the first length bytes of a received message
+    public static Batch decode(byte[] bytes, int length) {
+        return decode(ByteBuffer.wrap(bytes, 0, length));
+    }
+
+    // Decode the remaining bytes of a buffer, heap or direct, the position of the buffer is moved past them
+    public static Batch decode(ByteBuffer buffer) {
+        int length = buffer.remaining();
+        if (length < HEADER_BYTES) {
+            throw new IllegalArgumentException("Review batch of " + length + " bytes is shorter than its header");
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Message is not a review batch");
+        }
+        long batchSequence = buffer.getLong();
+        long firstReviewSequence = buffer.getLong();
+        int count = buffer.getInt();
+        if (count < 0) {
+            throw new IllegalArgumentException("Invalid number of reviews in batch " + batchSequence + ": " + count);
+        }
+        // Every review takes at least its length, so a corrupt count cannot allocate more than the message
+        List<String> reviews = new ArrayList<>(Math.min(count, length / Integer.BYTES));
+        for (int i = 0; i < count; i++) {
+            if (buffer.remaining() < Integer.BYTES) {
+                throw new IllegalArgumentException("Review batch " + batchSequence + " ends after " + i + " of " + count + " reviews");
+            }
+            int reviewLength = buffer.getInt();
+            if (reviewLength < 0 || reviewLength > buffer.remaining()) {
+                throw new IllegalArgumentException("Review batch " + batchSequence + " ends inside review " + i);
+            }
+            if (buffer.hasArray()) {
+                reviews.add(new String(buffer.array(), buffer.arrayOffset() + buffer.position(), reviewLength, StandardCharsets.UTF_8));
+                buffer.position(buffer.position() + reviewLength);
+            } else {
+                byte[] review = new byte[reviewLength];
+                buffer.get(review);
+                reviews.add(new String(review, StandardCharsets.UTF_8));
+            }
+        }
+        return new Batch(batchSequence, firstReviewSequence, reviews);
+    }
+}
@@ -0,0 +1,48 @@
+package com.prog3.sentimentanalysis;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ *  A source of review messages in the format of the sentiment server, {"<topic>":"<escaped review json>"}.
+* The live server is read by WebSocketReviewSource, a recorded JSONL file is replayed by FileReviewSource.
+* Every mode only sees the messages passed to its handler, so the same input can be used for all modes.
+* */
+public interface ReviewSource extends AutoCloseable {
+    // Address of the course sentiment server
+    String DEFAULT_SERVER_URI = "wss://prog3.student.famnit.upr.si/sentiment";
+
+    /**
+     *  Receives every message with its topic, when the source knows it from the subscription the message
+    * arrived on. The topic is null when it is only in the message, like in a replayed file.
+    * */
+    interface MessageHandler {
+        void onMessage(String topic, String message);
+    }
+
+    // Start delivering messages to the handler, returns right away and delivers on the source's own thread
+    void start(MessageHandler messageHandler);
+
+    // Stop delivering messages
+    @Override
+    void close();
+
+    /**
+     *  Create the source for a --source argument.
+    * A "file:" prefix replays the file with the given replay options, anything else is the
+    * ws:// or wss:// URI of a server, to which the topic is subscribed. When recordFile is not null,
+    * messages from a server are also appended to it so they can be replayed later.
+    * */
+    static ReviewSource create(String source, String topic, FileReviewSource.Replay replay, Path recordFile) {
+        return create(source, List.of(topic), replay, recordFile);
+    }
+
+    // Create the source for several topics, a server gets one session per topic, a file is replayed once
+    // with the messages of all topics it contains
+    static ReviewSource create(String source, List<String> topics, FileReviewSource.Replay replay, Path recordFile) {
+        if (source.startsWith("file:")) {
+            return new FileReviewSource(Path.of(source.substring(5)), replay);
+        }
+        return new WebSocketReviewSource(source, topics, recordFile);
+    }
+}
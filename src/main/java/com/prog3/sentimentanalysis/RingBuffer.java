@@ -0,0 +1,189 @@
+package com.prog3.sentimentanalysis;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *  Bounded queue between two stages, safe for several producer and several consumer threads.
+* All slots are allocated up front in an array, so passing an item never allocates a node.
+* Every slot has a sequence number that tells producers and consumers whether it is free or filled
+* (the array based queue of Dmitry Vyukov), so offer and poll only need one compare-and-set.
+* Threads that have to wait for a free slot or an item use the configured wait strategy.
+* */
+public class RingBuffer<T> implements LoadShedder.Target<T> {
+
+    /**
+     *  How a thread waits for the ring to change.
+    * BUSY_SPIN has the lowest latency and keeps a core busy, BLOCKING parks the thread until it is
+    * signalled and uses no CPU while idle, YIELDING and SLEEPING are in between.
+    * */
+    public enum WaitStrategy {
+        BUSY_SPIN, YIELDING, SLEEPING, BLOCKING;
+
+        // Accepts names like "busy-spin" from the command line
+        public static WaitStrategy parse(String name) {
+            return valueOf(name.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    // Spins before a yielding or sleeping thread starts to give up the core
+    private static final int SPIN_TRIES = 100;
+
+    private final Object[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong enqueuePosition = new AtomicLong();
+    private final AtomicLong dequeuePosition = new AtomicLong();
+    private final WaitStrategy waitStrategy;
+
+    // Only used by the blocking wait strategy
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private volatile int waiters;
+
+    // The capacity is rounded up to a power of two
+    public RingBuffer(int capacity, WaitStrategy waitStrategy) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid ring capacity: " + capacity);
+        }
+        int size = capacity == 1 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    // Add an item if there is a free slot, returns false if the ring is full
+    @Override
+    public boolean offer(T item) {
+        long position = enqueuePosition.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    slots[index] = item;
+                    // Publish the item to the consumers
+                    sequences.set(index, position + 1);
+                    signal();
+                    return true;
+                }
+                position = enqueuePosition.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = enqueuePosition.get();
+            }
+        }
+    }
+
+    // Take the oldest item, returns null if the ring is empty
+    @Override
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long position = dequeuePosition.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (dequeuePosition.compareAndSet(position, position + 1)) {
+                    T item = (T) slots[index];
+                    slots[index] = null;
+                    // Hand the slot back to the producers for the next round
+                    sequences.set(index, position + mask + 1);
+                    signal();
+                    return item;
+                }
+                position = dequeuePosition.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = dequeuePosition.get();
+            }
+        }
+    }
+
+    // Add an item, waiting while the ring is full
+    @Override
+    public void put(T item) throws InterruptedException {
+        for (int attempt = 0; !offer(item); attempt++) {
+            await(attempt);
+        }
+    }
+
+    // Take the oldest item, waiting while the ring is empty
+    public T take() throws InterruptedException {
+        T item;
+        for (int attempt = 0; (item = poll()) == null; attempt++) {
+            await(attempt);
+        }
+        return item;
+    }
+
+    // Number of items in the ring, exact only when no other thread is using it
+    @Override
+    public int size() {
+        long size = enqueuePosition.get() - dequeuePosition.get();
+        return (int) Math.max(0, Math.min(size, slots.length));
+    }
+
+    @Override
+    public int capacity() {
+        return slots.length;
+    }
+
+    private void await(int attempt) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        switch (waitStrategy) {
+            case BUSY_SPIN -> Thread.onSpinWait();
+            case YIELDING -> {
+                if (attempt < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+            case SLEEPING -> {
+                if (attempt < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else if (attempt < 2 * SPIN_TRIES) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(100_000);
+                }
+            }
+            case BLOCKING -> {
+                lock.lock();
+                try {
+                    waiters++;
+                    // The timeout covers a signal sent between the failed attempt and this wait
+                    changed.await(1, TimeUnit.MILLISECONDS);
+                } finally {
+                    waiters--;
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    // Wake up the threads blocked on the ring, only needed for the blocking wait strategy
+    private void signal() {
+        if (waitStrategy == WaitStrategy.BLOCKING && waiters > 0) {
+            lock.lock();
+            try {
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
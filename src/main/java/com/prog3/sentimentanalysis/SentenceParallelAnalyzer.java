@@ -0,0 +1,127 @@
+package com.prog3.sentimentanalysis;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.neural.rnn.RNNCoreAnnotations;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.sentiment.SentimentCoreAnnotations;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.util.CoreMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ *  Sentiment analyzer that scores every sentence of a review and combines them into one label.
+* The review is first split into sentences with the cheap tokenize and ssplit annotators.
+* The sentences are then parsed and scored concurrently on a fork/join pool, and the review label
+* is the sentiment class with the most tokens behind it (a vote weighted by sentence length).
+* A tie between classes, or a review without any scored sentence, is Neutral.
+* Reviews with a single sentence are scored directly on the calling thread.
+* */
+public class SentenceParallelAnalyzer extends SentimentAnalyzer {
+    // Sentiment classes in the order of the predicted class index of the sentiment model
+    private static final String[] SENTIMENT_CLASSES = {"Very negative", "Negative", "Neutral", "Positive", "Very positive"};
+
+    // Parses and scores sentences that are already tokenized, shared by all threads of the pool
+    private final StanfordCoreNLP sentencePipeline;
+    private final ForkJoinPool pool;
+
+    public SentenceParallelAnalyzer(ForkJoinPool pool) {
+        // The pipeline of the base class only splits the review into sentences
+        super(SentimentCache.getShared(), "tokenize, ssplit");
+        // Tokens and sentences come from the splitting pipeline
+        this.sentencePipeline = SharedPipelines.get("parse, sentiment", false);
+        this.pool = pool;
+    }
+
+    @Override
+    protected String computeSentiment(String reviewText) {
+        Annotation annotation = new Annotation(reviewText);
+        pipeline.annotate(annotation);
+        List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+        if (sentences == null || sentences.isEmpty()) {
+            return null;
+        }
+        SentenceTask task = new SentenceTask(sentences, 0, sentences.size());
+        double[] votes = sentences.size() == 1 ? task.compute() : pool.invoke(task);
+        return winner(votes);
+    }
+
+    // The class with the most tokens wins, Neutral when the top classes tie or nothing was scored
+    static String winner(double[] votes) {
+        int best = 2;
+        boolean tied = false;
+        for (int i = 0; i < votes.length; i++) {
+            if (i == best) {
+                continue;
+            }
+            if (votes[i] > votes[best]) {
+                best = i;
+                tied = false;
+            } else if (votes[i] == votes[best]) {
+                tied = true;
+            }
+        }
+        return tied || votes[best] == 0 ? "Neutral" : SENTIMENT_CLASSES[best];
+    }
+
+    // Every review is already parallel over its sentences, so a batch is analyzed one review after the other
+    @Override
+    public List<String> analyzeSentiments(List<String> reviewTexts, int numThreads) {
+        List<String> sentiments = new ArrayList<>(reviewTexts.size());
+        for (String reviewText : reviewTexts) {
+            sentiments.add(analyzeSentiment(reviewText));
+        }
+        return sentiments;
+    }
+
+    // Scores a range of sentences, splitting it in halves until a single sentence is left
+    private class SentenceTask extends RecursiveTask<double[]> {
+        private static final long serialVersionUID = 1L;
+        // Tasks are never serialized, the sentences only live while the review is analyzed
+        private final transient List<CoreMap> sentences;
+        private final int from;
+        private final int to;
+
+        SentenceTask(List<CoreMap> sentences, int from, int to) {
+            this.sentences = sentences;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (to - from == 1) {
+                return scoreSentence(sentences.get(from));
+            }
+            int middle = (from + to) >>> 1;
+            SentenceTask left = new SentenceTask(sentences, from, middle);
+            left.fork();
+            double[] votes = new SentenceTask(sentences, middle, to).compute();
+            double[] leftVotes = left.join();
+            for (int i = 0; i < votes.length; i++) {
+                votes[i] += leftVotes[i];
+            }
+            return votes;
+        }
+
+        // Parse one sentence and vote for its class with its number of tokens
+        private double[] scoreSentence(CoreMap sentence) {
+            double[] votes = new double[SENTIMENT_CLASSES.length];
+            List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
+            Annotation sentenceDocument = new Annotation(sentence.get(CoreAnnotations.TextAnnotation.class));
+            sentenceDocument.set(CoreAnnotations.TokensAnnotation.class, tokens);
+            sentenceDocument.set(CoreAnnotations.SentencesAnnotation.class, List.of(sentence));
+            sentencePipeline.annotate(sentenceDocument);
+            Tree tree = sentence.get(SentimentCoreAnnotations.SentimentAnnotatedTree.class);
+            if (tree != null) {
+                votes[RNNCoreAnnotations.getPredictedClass(tree)] += tokens.size();
+            }
+            return votes;
+        }
+    }
+}
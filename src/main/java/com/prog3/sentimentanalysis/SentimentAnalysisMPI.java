@@ -1,43 +1,19 @@
 package com.prog3.sentimentanalysis;
 import mpi.*;
-import org.springframework.web.socket.*;
-import org.springframework.web.socket.client.standard.StandardWebSocketClient;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.*;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 public class SentimentAnalysisMPI {
-    // Valid topic from command arguments
-    private static String topic = null;
-    // Web socket session for the server connection
-    private static WebSocketSession session;
-    // Queue to store reviews
-    private static Queue<String> reviewQueue = new LinkedList<>();
-    // Output file for the results
-    private static final String OUTPUT_FILE = "distributed_review_counts.txt";
-
-    // Method to write results to a text file
-    private static void saveToFile(int reviewsPerSecond) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(OUTPUT_FILE, true))) {
-            writer.println("Reviews processed per second: " + reviewsPerSecond);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-    // Method to clear the output file
-    private static void clearOutputFile() {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(OUTPUT_FILE))) {
-            writer.print("");
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
+    // Options of the master and the workers
+    private static DistributedConfig config;
+    // CSV file the metrics of every second are written to
+    private static final String OUTPUT_FILE = "distributed_metrics.csv";
+    // Message tags: review batches to a worker, statistics and credit from a worker
+    private static final int REVIEWS_TAG = 0;
+    private static final int STATS_TAG = 1;
+    private static final int CREDIT_TAG = 2;
 
     // Constructor
     public SentimentAnalysisMPI() {    }
@@ -56,6 +32,14 @@ public class SentimentAnalysisMPI {
             System.exit(0);
         }, executionDurationMinutes, TimeUnit.MINUTES);
 
+        // A warm-up only run does not join the MPI job, it records a class-data-sharing archive
+        // with -XX:ArchiveClassesAtExit on the classpath of the ranks
+        if (Arrays.asList(args).contains("--warmup-only=true")) {
+            config = DistributedConfig.parse(args);
+            Warmup.run(config.createAnalyzer(new TieredSentimentAnalyzer.TierStats()), Math.max(config.warmupRounds, 1));
+            System.exit(0);
+        }
+
         // Environment initialization
         MPI.Init(args);
 
@@ -72,152 +56,132 @@ public class SentimentAnalysisMPI {
         }
 
         // Reading topic from command line arguments
-        for (String arg : args) {
-            if (arg.startsWith("--topic=")) {
-                topic = arg.substring(8).toLowerCase();
-            }
-        }
+        config = DistributedConfig.parse(args);
 
         // If the topic is not specified, return
-        if (topic == null) {
-            System.err.println("Please specify the topic using the --topic=<topic> argument (change <topic> for music, toys, pet-supplies, automotive or sport).");
+        if (!config.resolveTopics()) {
             MPI.Finalize();
             return;
         }
 
         // Decide if master or worker process is called
-        SentimentAnalysisMPI sentimentAnalysisMPI = new SentimentAnalysisMPI();
         if (me == 0) {
-            // Master process in case rank is 0
-            sentimentAnalysisMPI.masterProcess(size);
+            // Master process in case rank is 0, the worker ranks are the workers 1 to size - 1
+            new DistributedMaster(config, size - 1, new MasterTransport(), OUTPUT_FILE).start();
         }
         else {
             // Worker processes otherwise
-            sentimentAnalysisMPI.workerProcess(me);
+            new DistributedWorker(config, "Worker Process " + me, new WorkerTransport()).run();
         }
 
         MPI.Finalize();
     }
 
-    // Master process logic
-    // Handles connection, subscription to a topic and parses the text review
-    private void masterProcess(int numWorkers) {
-        clearOutputFile(); // Clear the output file at the start
-        org.springframework.web.socket.client.WebSocketClient webSocketClient = new StandardWebSocketClient();
-        String serverUri = "wss://prog3.student.famnit.upr.si/sentiment";
-        webSocketClient.doHandshake(new TextWebSocketHandler() {
-            // After connection, create a session, then send a message to subscribe to topic
-            @Override
-            public void afterConnectionEstablished(WebSocketSession session) {
-                System.out.println("WebSocket connection established.");
-                // Subscribe to topic
-                SentimentAnalysisMPI.session = session;
-                try {
-                    session.sendMessage(new TextMessage("topic: " + topic));
-//                    System.out.println("Subscribed to topic: " + topic);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
-            // Handle the json
-            @Override
-            protected void handleTextMessage(WebSocketSession session, TextMessage message) {
-//                System.out.println("Received a new message.");
-                // New message received
-                String receivedMessage = message.getPayload();
-                // Extract the review text from the received json message
-                String extractedReview = JsonParser.extractReviewText(receivedMessage, topic);
-
-                // Check if extractedReview is null before continuing
-                if (extractedReview != null) {
-                    if (!reviewQueue.contains(extractedReview)) {
-                        reviewQueue.offer(extractedReview);
-                        // Distribute reviews among workers
-                        distributeReviews();
-                    } else {
-                        System.out.println("Skipping processing. Duplicate review received.");
-                    }
-                } else {
-                    // Handle the case where extractedReview is null
-                    System.out.println("Extracted review is null. Skipping processing.");
+    /**
+     *  Sends the batches of the master to the worker ranks with non-blocking sends,
+    * and receives their credit and statistics on two threads of its own.
+    * */
+    private static final class MasterTransport implements DistributedMaster.Transport {
+        // A batch whose non-blocking send may not have completed, its writer is reused once it has
+        private record PendingSend(Request request, ReviewBatch.Writer writer) {
+        }
+
+        // Only used by the dispatcher thread
+        private final List<PendingSend> pendingSends = new ArrayList<>();
+
+        @Override
+        public void start(DistributedMaster.WorkerEvents events) {
+            Thread creditReceiver = new Thread(() -> receiveCredit(events), "credit-receiver");
+            creditReceiver.setDaemon(true);
+            creditReceiver.start();
+            Thread statsReceiver = new Thread(() -> receiveStats(events), "stats-receiver");
+            statsReceiver.setDaemon(true);
+            statsReceiver.start();
+        }
+
+        @Override
+        public ReviewBatch.Writer newWriter() {
+            return new ReviewBatch.Writer(DistributedMaster.INITIAL_BUFFER_BYTES);
+        }
+
+        @Override
+        public boolean send(int worker, ReviewBatch.Writer writer, int length) {
+            Request request = MPI.COMM_WORLD.Isend(writer.getBuffer(), 0, length, MPI.BYTE, worker, REVIEWS_TAG);
+            pendingSends.add(new PendingSend(request, writer));
+            return true;
+        }
+
+        @Override
+        public void reclaim(Deque<ReviewBatch.Writer> freeWriters) {
+            pendingSends.removeIf(pending -> {
+                if (pending.request().Test() == null) {
+                    return false;
                 }
-            }
+                freeWriters.push(pending.writer());
+                return true;
+            });
+        }
 
-        }, serverUri);
-        // Schedule a task to log the number of reviews processed per second
-        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-        scheduler.scheduleAtFixedRate(() -> {
-            int totalReviewsPerSecond = 0;
-
-            // Receive the number of processed reviews from each worker
-            for (int i = 1; i < numWorkers; i++) {
-                int[] reviewsPerSecond = new int[1];
-                MPI.COMM_WORLD.Recv(reviewsPerSecond, 0, 1, MPI.INT, i, 1);
-                totalReviewsPerSecond += reviewsPerSecond[0];
+        // Receive the statistics of every worker as they arrive
+        private void receiveStats(DistributedMaster.WorkerEvents events) {
+            long[] report = new long[WorkerStatsAggregator.reportLength()];
+            while (true) {
+                Status status = MPI.COMM_WORLD.Recv(report, 0, report.length, MPI.LONG, MPI.ANY_SOURCE, STATS_TAG);
+                events.recordStats(status.source, report);
             }
+        }
 
-            System.out.println("Total reviews processed per second: " + totalReviewsPerSecond);
-            saveToFile(totalReviewsPerSecond);
-        }, 1, 1, TimeUnit.SECONDS);
+        // Receive the credit of every worker
+        private void receiveCredit(DistributedMaster.WorkerEvents events) {
+            int[] credit = new int[1];
+            while (true) {
+                Status status = MPI.COMM_WORLD.Recv(credit, 0, 1, MPI.INT, MPI.ANY_SOURCE, CREDIT_TAG);
+                events.addCredit(status.source, credit[0]);
+            }
+        }
     }
 
-    // Worker process logic
-    // Creates a sentiment Analyzer instance and  evaluate the review
-    private void workerProcess(int rank) {
-        // Create an instance of SentimentAnalyzer
-        SentimentAnalyzer sentimentAnalyzer = new SentimentAnalyzer();
+    /**
+     *  Receives the batches of the master on rank 0, and sends the credit and statistics back.
+    * */
+    private static final class WorkerTransport implements DistributedWorker.Transport {
+        // Buffer to receive the messages, reused and only grown when a message does not fit
+        private byte[] messageBytes = new byte[DistributedMaster.INITIAL_BUFFER_BYTES];
+        // Copy of the last report, which must not change while its non-blocking send is on its way
+        private final long[] report = new long[WorkerStatsAggregator.reportLength()];
+        private Request pendingReport;
+
+        @Override
+        public ReviewBatch.Batch receive() {
+            while (true) {
+                // Probe first, so the buffer can be sized to the message and no review is cut off
+                Status probed = MPI.COMM_WORLD.Probe(0, MPI.ANY_TAG);
+                int length = probed.Get_count(MPI.BYTE);
+                if (length > messageBytes.length) {
+                    messageBytes = new byte[Math.max(length, messageBytes.length * 2)];
+                }
 
-        // Initialize variables for tracking reviews processed per second
-        final int[] analyzedReviews = {0};
-        // Schedule a task to log the number of reviews processed per second
-        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-        scheduler.scheduleAtFixedRate(() -> {
-            int[] reviewsPerSecond = {analyzedReviews[0]};
-            MPI.COMM_WORLD.Send(reviewsPerSecond, 0, 1, MPI.INT, 0, 1);
-            analyzedReviews[0] = 0; // Reset count after sending
-        }, 1, 1, TimeUnit.SECONDS);
-
-        // Receive messages from master process
-        while (true) {
-            // Buffer to receive the message
-            byte[] messageBytes = new byte[8192];
-
-            // Receive message from master process
-            Status status = MPI.COMM_WORLD.Recv(messageBytes, 0, messageBytes.length, MPI.BYTE, 0, MPI.ANY_TAG);
-
-            if (status.tag == 0) {
-                // Convert received bytes to string
-                String receivedMessage = new String(messageBytes).trim();
-                // Perform sentiment analysis on the received message
-                String sentiment = sentimentAnalyzer.analyzeSentiment(receivedMessage);
-                // Print the sentiment result
-                System.out.println("Worker Process " + rank + " - Sentiment: " + sentiment);
-                // Increment the count of reviews processed this second
-                analyzedReviews[0]++;
+                // Receive message from master process
+                Status status = MPI.COMM_WORLD.Recv(messageBytes, 0, length, MPI.BYTE, 0, probed.tag);
+                if (status.tag == REVIEWS_TAG) {
+                    return ReviewBatch.decode(messageBytes, length);
+                }
             }
         }
-    }
-    private int nextWorkerRank = 1; // Track the next worker process to send a review
-    // Method to distribute the messages to worker processes
-    private void distributeReviews() {
-        // Number of available processes
-        int numWorkers = MPI.COMM_WORLD.Size() - 1;
-
-        // Distribute the available reviews
-        while (!reviewQueue.isEmpty()) {
-            // Get the next review from the queue
-            String review = reviewQueue.poll();
-            // Get the bytes to send to the worker process
-            byte[] reviewBytes = review.getBytes();
-
-            // Send the review to the next worker process in round-robin order
-            MPI.COMM_WORLD.Send(reviewBytes, 0, reviewBytes.length, MPI.BYTE, nextWorkerRank, 0);
-//            System.out.println("Sent review to worker process " + nextWorkerRank);
-
-            // Increment nextWorkerRank and wrap around
-            nextWorkerRank++;
-            if (nextWorkerRank > numWorkers) {
-                nextWorkerRank = 1;
+
+        // Called by the receive loop and the analysis threads
+        @Override
+        public synchronized void sendCredit(int reviews) {
+            int[] credit = {reviews};
+            MPI.COMM_WORLD.Send(credit, 0, 1, MPI.INT, 0, CREDIT_TAG);
+        }
+
+        @Override
+        public void sendStats(long[] totals) {
+            // If the last report is still on its way this one is skipped
+            if (pendingReport == null || pendingReport.Test() != null) {
+                System.arraycopy(totals, 0, report, 0, report.length);
+                pendingReport = MPI.COMM_WORLD.Isend(report, 0, report.length, MPI.LONG, 0, STATS_TAG);
             }
         }
     }
@@ -0,0 +1,80 @@
+package com.prog3.sentimentanalysis;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Distributed implementation over plain TCP, without an MPI runtime.
+* The coordinator runs the same master as the MPI implementation and the workers the same worker, they only
+* differ in the transport: the workers connect to the coordinator with a SocketWorkerLink, from the same machine
+* or from others, and can come and go while it runs.
+* */
+public class SentimentAnalysisTcp {
+    // CSV file the metrics of every second are written to
+    private static final String OUTPUT_FILE = "socket_metrics.csv";
+
+    // MAIN method
+    public static void main(String[] args) {
+        // Set the duration for application execution (in minutes)
+        int executionDurationMinutes = 10;
+
+        // Options of the transport, the others are read by DistributedConfig
+        String role = null;
+        int port = 7070;
+        int workers = 1;
+        String coordinatorAddress = "localhost:7070";
+        long heartbeatTimeoutMillis = 5000;
+        long giveUpMillis = 60_000;
+        for (String arg : args) {
+            if (arg.startsWith("--role=")) {
+                role = arg.substring(7).toLowerCase();
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring(7));
+            } else if (arg.startsWith("--workers=")) {
+                workers = Math.max(1, Integer.parseInt(arg.substring(10)));
+            } else if (arg.startsWith("--coordinator=")) {
+                coordinatorAddress = arg.substring(14);
+            } else if (arg.startsWith("--heartbeat-timeout-ms=")) {
+                heartbeatTimeoutMillis = Long.parseLong(arg.substring(23));
+            } else if (arg.startsWith("--give-up-ms=")) {
+                giveUpMillis = Long.parseLong(arg.substring(13));
+            }
+        }
+        DistributedConfig config = DistributedConfig.parse(args);
+
+        // A warm-up only run records a class-data-sharing archive with -XX:ArchiveClassesAtExit
+        if (Arrays.asList(args).contains("--warmup-only=true")) {
+            Warmup.run(config.createAnalyzer(new TieredSentimentAnalyzer.TierStats()), Math.max(config.warmupRounds, 1));
+            System.exit(0);
+        }
+
+        if ("coordinator".equals(role)) {
+            // If the topic is not specified, return
+            if (!config.resolveTopics()) {
+                return;
+            }
+            // Schedule a task to shutdown the coordinator after the specified duration, the workers then give up
+            ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+            scheduler.schedule(() -> {
+                System.out.println("Application execution completed. Shutting down...");
+                System.exit(0);
+            }, executionDurationMinutes, TimeUnit.MINUTES);
+            SocketCoordinator coordinator = new SocketCoordinator(port, workers, heartbeatTimeoutMillis);
+            // The master closes its review source on the way out, the connections to the workers are closed here
+            Runtime.getRuntime().addShutdownHook(new Thread(coordinator::close, "socket-coordinator-close"));
+            new DistributedMaster(config, workers, coordinator, OUTPUT_FILE).start();
+        } else if ("worker".equals(role)) {
+            int separator = coordinatorAddress.lastIndexOf(':');
+            String host = separator < 0 ? coordinatorAddress : coordinatorAddress.substring(0, separator);
+            int coordinatorPort = separator < 0 ? port : Integer.parseInt(coordinatorAddress.substring(separator + 1));
+            SocketWorkerLink link = new SocketWorkerLink(host, coordinatorPort, heartbeatTimeoutMillis, giveUpMillis);
+            link.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(link::close, "socket-worker-close"));
+            new DistributedWorker(config, "Worker Process " + ProcessHandle.current().pid(), link).run();
+            System.exit(0);
+        } else {
+            System.err.println("Please specify the role using --role=coordinator or --role=worker");
+        }
+    }
+}
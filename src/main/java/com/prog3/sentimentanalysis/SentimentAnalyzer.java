@@ -4,33 +4,117 @@ import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.pipeline.Annotation;
 import edu.stanford.nlp.pipeline.StanfordCoreNLP;
 import edu.stanford.nlp.sentiment.SentimentCoreAnnotations;
+import edu.stanford.nlp.util.CoreMap;
 
-import java.util.Properties;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  *  This class serves to make the proper sentiment analysis to a review.
 * It uses the Standford CoreNLP library for that purpose.
+* Results are looked up in and added to the shared SentimentCache, so repeated reviews are not analyzed again.
+* The time spent in the pipeline is recorded in the shared PipelineMetrics.
+* The pipeline comes from SharedPipelines, so creating another analyzer does not load the models again.
 * */
 public class SentimentAnalyzer {
-    private StanfordCoreNLP pipeline;
+    // Annotators of the full pipeline
+    static final String FULL_ANNOTATORS = "tokenize, ssplit, parse, sentiment";
+
+    protected final StanfordCoreNLP pipeline;
+    // Cache of already analyzed reviews, null if caching is disabled
+    private final SentimentCache cache;
 
     public SentimentAnalyzer() {
-        Properties props = new Properties();
-        props.setProperty("annotators", "tokenize, ssplit, parse, sentiment");
-        this.pipeline = new StanfordCoreNLP(props);
+        this(SentimentCache.getShared());
+    }
+
+    public SentimentAnalyzer(SentimentCache cache) {
+        this(cache, FULL_ANNOTATORS);
+    }
+
+    // Used by analyzers that need a different pipeline
+    protected SentimentAnalyzer(SentimentCache cache, String annotators) {
+        // The models are loaded once per JVM and shared by all analyzers
+        this.pipeline = SharedPipelines.get(annotators);
+        this.cache = cache;
     }
 
     public String analyzeSentiment(String reviewText) {
         if (reviewText != null) {
+            // Check if the same review was already analyzed
+            if (cache != null) {
+                String cached = cache.get(reviewText);
+                if (cached != null) {
+                    return cached;
+                }
+            }
             // Perform sentiment analysis
-            Annotation annotation = new Annotation(reviewText);
-            pipeline.annotate(annotation);
-            return annotation.get(CoreAnnotations.SentencesAnnotation.class)
-                    .get(0)
-                    .get(SentimentCoreAnnotations.SentimentClass.class);
+            long start = System.nanoTime();
+            String sentiment = computeSentiment(reviewText);
+            PipelineMetrics.getShared().recordAnnotate(System.nanoTime() - start);
+            if (cache != null) {
+                cache.put(reviewText, sentiment);
+            }
+            return sentiment;
         } else {
             return null;
         }
     }
 
+    // Run the pipeline on a review that is not cached
+    protected String computeSentiment(String reviewText) {
+        Annotation annotation = new Annotation(reviewText);
+        pipeline.annotate(annotation);
+        return sentimentOf(annotation);
+    }
+
+    // Analyze several reviews with a single call to the pipeline, which annotates them on numThreads threads.
+    // The returned list has the sentiment of every review at the same position as the review.
+    public List<String> analyzeSentiments(List<String> reviewTexts, int numThreads) {
+        String[] sentiments = new String[reviewTexts.size()];
+        // Annotations of the reviews that are not cached, and the position of each one in the input
+        List<Annotation> annotations = new ArrayList<>(reviewTexts.size());
+        int[] positions = new int[reviewTexts.size()];
+        for (int i = 0; i < reviewTexts.size(); i++) {
+            String reviewText = reviewTexts.get(i);
+            if (reviewText == null) {
+                continue;
+            }
+            String cached = cache != null ? cache.get(reviewText) : null;
+            if (cached != null) {
+                sentiments[i] = cached;
+            } else {
+                positions[annotations.size()] = i;
+                annotations.add(new Annotation(reviewText));
+            }
+        }
+        if (!annotations.isEmpty()) {
+            long start = System.nanoTime();
+            pipeline.annotate(annotations, numThreads);
+            // The reviews of a batch are annotated together, each one gets an equal share of the time
+            long share = (System.nanoTime() - start) / annotations.size();
+            for (int j = 0; j < annotations.size(); j++) {
+                PipelineMetrics.getShared().recordAnnotate(share);
+            }
+        }
+        for (int j = 0; j < annotations.size(); j++) {
+            int position = positions[j];
+            sentiments[position] = sentimentOf(annotations.get(j));
+            if (cache != null) {
+                cache.put(reviewTexts.get(position), sentiments[position]);
+            }
+        }
+        return Arrays.asList(sentiments);
+    }
+
+    // The sentiment of a review is the sentiment of its first sentence
+    private static String sentimentOf(Annotation annotation) {
+        List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+        if (sentences == null || sentences.isEmpty()) {
+            return null;
+        }
+        return sentences.get(0).get(SentimentCoreAnnotations.SentimentClass.class);
+    }
+
 }
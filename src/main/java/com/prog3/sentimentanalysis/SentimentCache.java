@@ -0,0 +1,265 @@
+package com.prog3.sentimentanalysis;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  The purpose of this class is to remember the sentiment of review texts that were already analyzed.
+* Reviews are stored under a 64-bit hash of their normalized text (trimmed, lower case, single spaces),
+* so a repeated review costs only a lookup instead of a full CoreNLP run.
+* The cache is split into independently locked segments and holds at most as many entries as fit in
+* its memory budget. When a segment is full, the least frequently used of its oldest entries is evicted,
+* and a new review only replaces it if it has been seen more often (TinyLFU admission).
+* One shared instance is used by all analyzers of the JVM.
+* */
+public class SentimentCache {
+    // Approximate heap cost of one entry: map entry, boxed key and its share of the frequency sketch
+    static final int ENTRY_BYTES = 96;
+    // Default memory budget of the shared cache
+    public static final long DEFAULT_BUDGET_BYTES = 16L * 1024 * 1024;
+    // Number of oldest entries compared when choosing an eviction victim
+    private static final int EVICTION_SAMPLE = 4;
+
+    // Cache shared by every analyzer in this JVM, null when caching is disabled
+    private static volatile SentimentCache shared = new SentimentCache(DEFAULT_BUDGET_BYTES);
+
+    private final Segment[] segments;
+    private final FrequencySketch sketch;
+    private final long maxEntries;
+
+    // Metrics
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    public SentimentCache(long budgetBytes) {
+        long entries = Math.max(budgetBytes / ENTRY_BYTES, 1);
+        // Power of two number of segments, around four per core and never more than the entries
+        int numSegments = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4));
+        while (numSegments > 1 && numSegments > entries) {
+            numSegments >>= 1;
+        }
+        int perSegment = (int) Math.min(Integer.MAX_VALUE, entries / numSegments);
+        this.segments = new Segment[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+        this.maxEntries = (long) perSegment * numSegments;
+        this.sketch = new FrequencySketch(maxEntries);
+    }
+
+    // Cache used by the analyzers, null if caching is disabled
+    public static SentimentCache getShared() {
+        return shared;
+    }
+
+    // Replace the shared cache with one of the given budget, a budget of 0 disables caching
+    public static void configureShared(long budgetBytes) {
+        shared = budgetBytes > 0 ? new SentimentCache(budgetBytes) : null;
+    }
+
+    // Returns the cached sentiment of the review, or null if it was not analyzed before
+    public String get(String reviewText) {
+        long key = key(reviewText);
+        sketch.increment(key);
+        String sentiment = segmentFor(key).get(key);
+        if (sentiment != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return sentiment;
+    }
+
+    // Store the sentiment of an analyzed review
+    public void put(String reviewText, String sentiment) {
+        if (sentiment == null) {
+            return;
+        }
+        long key = key(reviewText);
+        segmentFor(key).put(key, sentiment);
+    }
+
+    /**
+     *  Hash of the normalized review text. Leading and trailing whitespace is ignored, runs of
+    * whitespace count as one space and letters are compared in lower case. The normalized text is
+    * never built, the characters are hashed as they are read (FNV-1a followed by a 64-bit mix).
+    * */
+    static long key(String reviewText) {
+        long hash = 0xcbf29ce484222325L;
+        boolean pendingSpace = false;
+        boolean started = false;
+        for (int i = 0; i < reviewText.length(); i++) {
+            char c = reviewText.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = started;
+                continue;
+            }
+            if (pendingSpace) {
+                hash = (hash ^ ' ') * 0x100000001b3L;
+                pendingSpace = false;
+            }
+            started = true;
+            hash = (hash ^ Character.toLowerCase(c)) * 0x100000001b3L;
+        }
+        // Spread the bits so that low bits are good enough for segment and sketch indexes
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private Segment segmentFor(long key) {
+        return segments[(int) (key >>> 32) & (segments.length - 1)];
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    // Fraction of lookups that found a cached sentiment
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Sentiment cache: %d/%d entries, %d hits, %d misses, hit rate %.1f%%, %d evictions, %d rejected",
+                size(), maxEntries, getHits(), getMisses(), getHitRate() * 100, getEvictions(), rejections.sum());
+    }
+
+    // Part of the cache with its own lock, entries are kept from the least to the most recently used
+    private final class Segment {
+        private final int capacity;
+        private final LinkedHashMap<Long, String> entries;
+
+        Segment(int capacity) {
+            this.capacity = Math.max(capacity, 1);
+            this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        }
+
+        synchronized String get(long key) {
+            return entries.get(key);
+        }
+
+        synchronized void put(long key, String sentiment) {
+            if (entries.containsKey(key) || entries.size() < capacity) {
+                entries.put(key, sentiment);
+                return;
+            }
+            // Choose the least frequently used among the oldest entries
+            Iterator<Map.Entry<Long, String>> iterator = entries.entrySet().iterator();
+            long victim = 0;
+            int victimFrequency = Integer.MAX_VALUE;
+            for (int i = 0; i < EVICTION_SAMPLE && iterator.hasNext(); i++) {
+                long candidate = iterator.next().getKey();
+                int frequency = sketch.frequency(candidate);
+                if (frequency < victimFrequency) {
+                    victim = candidate;
+                    victimFrequency = frequency;
+                }
+            }
+            // Only admit the new review if it is more popular than the entry it would replace
+            if (sketch.frequency(key) <= victimFrequency) {
+                rejections.increment();
+                return;
+            }
+            entries.remove(victim);
+            entries.put(key, sentiment);
+            evictions.increment();
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    /**
+     *  Count-min sketch with four rows of small saturating counters.
+    * All counters are halved after a number of increments proportional to the cache size,
+    * so the frequencies follow recent popularity. Updates are not synchronized, an occasional
+    * lost increment only makes an estimate slightly lower.
+    * */
+    private static final class FrequencySketch {
+        private static final int MAX_COUNT = 15;
+        private final int[][] rows = new int[4][];
+        private final int mask;
+        private final long resetAfter;
+        private final AtomicLong additions = new AtomicLong();
+
+        FrequencySketch(long maxEntries) {
+            int width = Integer.highestOneBit((int) Math.min(1 << 30, Math.max(16, maxEntries)) - 1) << 1;
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = new int[width];
+            }
+            this.mask = width - 1;
+            this.resetAfter = Math.max(maxEntries * 10, 160);
+        }
+
+        int frequency(long key) {
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < rows.length; i++) {
+                frequency = Math.min(frequency, rows[i][index(key, i)]);
+            }
+            return frequency;
+        }
+
+        void increment(long key) {
+            for (int i = 0; i < rows.length; i++) {
+                int index = index(key, i);
+                if (rows[i][index] < MAX_COUNT) {
+                    rows[i][index]++;
+                }
+            }
+            if (additions.incrementAndGet() >= resetAfter) {
+                age();
+            }
+        }
+
+        private synchronized void age() {
+            if (additions.get() < resetAfter) {
+                return;
+            }
+            additions.set(0);
+            for (int[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+        }
+
+        // Every row uses a different 16-bit slice of the key, mixed with the row number
+        private int index(long key, int row) {
+            long h = (key >>> (row * 16)) * 0x9e3779b97f4a7c15L + row;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
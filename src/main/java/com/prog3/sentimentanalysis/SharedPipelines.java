@@ -0,0 +1,39 @@
+package com.prog3.sentimentanalysis;
+
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *  CoreNLP pipelines shared by every analyzer of the JVM.
+* Building a pipeline loads the parser and sentiment models, which takes seconds and a lot of heap,
+* so each combination of annotators is built once, kept for the life of the JVM and used by all analyzers.
+* A StanfordCoreNLP pipeline only reads its models while annotating, so one instance can annotate
+* on many threads at the same time.
+* */
+public final class SharedPipelines {
+    private static final Map<String, StanfordCoreNLP> pipelines = new ConcurrentHashMap<>();
+
+    private SharedPipelines() {
+    }
+
+    // Pipeline with the given annotators, which adds the annotators they require
+    public static StanfordCoreNLP get(String annotators) {
+        return get(annotators, true);
+    }
+
+    // Pipeline with the given annotators, with enforceRequirements false the input must already have their requirements
+    public static StanfordCoreNLP get(String annotators, boolean enforceRequirements) {
+        return pipelines.computeIfAbsent(annotators + "|" + enforceRequirements, key -> {
+            long start = System.nanoTime();
+            Properties props = new Properties();
+            props.setProperty("annotators", annotators);
+            props.setProperty("enforceRequirements", Boolean.toString(enforceRequirements));
+            StanfordCoreNLP pipeline = new StanfordCoreNLP(props);
+            System.out.println("Loaded pipeline \"" + annotators + "\" in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            return pipeline;
+        });
+    }
+}
@@ -0,0 +1,276 @@
+package com.prog3.sentimentanalysis;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ *  Master side of the socket transport, the workers connect to it over TCP.
+* One I/O thread accepts the workers and reads and writes all connections in non-blocking mode. A worker says
+* hello with the session id of its process: the same session coming back is a reconnect and keeps its number,
+* a new session takes a number that was never used or whose worker went away, and counts as restarted.
+* Both sides send a heartbeat every second, a connection that receives nothing for the timeout is closed.
+* The batches are written from the direct buffers of their writers, which are reused once they were written.
+* */
+public class SocketCoordinator implements DistributedMaster.Transport {
+    private static final long HEARTBEAT_MILLIS = 1000;
+
+    // A connection and the worker it belongs to, 0 until its hello arrived
+    private static final class Connection {
+        private final FrameChannel channel;
+        private int worker;
+
+        private Connection(FrameChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final int port;
+    private final int maxWorkers;
+    private final long timeoutMillis;
+    // Connection of every worker, null while the worker is not connected
+    private final AtomicReferenceArray<Connection> workers;
+    // Session of the process that last had every worker number, only used by the I/O thread
+    private final long[] sessions;
+    private final boolean[] used;
+    // Writers whose batches were written or dropped, the dispatcher takes them back
+    private final ConcurrentLinkedQueue<ReviewBatch.Writer> completedWriters = new ConcurrentLinkedQueue<>();
+    private DistributedMaster.WorkerEvents events;
+    private ServerSocketChannel server;
+    private Selector selector;
+    private volatile boolean running;
+
+    public SocketCoordinator(int port, int maxWorkers, long timeoutMillis) {
+        this.port = port;
+        this.maxWorkers = maxWorkers;
+        this.timeoutMillis = timeoutMillis;
+        this.workers = new AtomicReferenceArray<>(maxWorkers + 1);
+        this.sessions = new long[maxWorkers + 1];
+        this.used = new boolean[maxWorkers + 1];
+    }
+
+    @Override
+    public void start(DistributedMaster.WorkerEvents events) throws IOException {
+        this.events = events;
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        Thread ioThread = new Thread(this::runLoop, "socket-coordinator");
+        ioThread.setDaemon(true);
+        ioThread.start();
+        System.out.println("Waiting for up to " + maxWorkers + " workers on port " + getPort());
+    }
+
+    // Port the coordinator listens on, useful when it was started on port 0
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    @Override
+    public ReviewBatch.Writer newWriter() {
+        // Direct, so the channel writes the batch without copying it
+        return new ReviewBatch.Writer(DistributedMaster.INITIAL_BUFFER_BYTES, true);
+    }
+
+    @Override
+    public boolean send(int worker, ReviewBatch.Writer writer, int length) {
+        Connection connection = workers.get(worker);
+        if (connection == null
+                || !connection.channel.send(FrameChannel.BATCH, writer.getByteBuffer(), () -> completedWriters.add(writer))) {
+            return false;
+        }
+        selector.wakeup();
+        return true;
+    }
+
+    @Override
+    public void reclaim(Deque<ReviewBatch.Writer> freeWriters) {
+        ReviewBatch.Writer writer;
+        while ((writer = completedWriters.poll()) != null) {
+            freeWriters.push(writer);
+        }
+    }
+
+    // Stop listening and close every connection
+    public void close() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    // Accept, read and write until the coordinator is closed, runs on the I/O thread
+    private void runLoop() {
+        long nextHeartbeat = DistributedMaster.monotonicMillis() + HEARTBEAT_MILLIS;
+        try {
+            while (running) {
+                selector.select(250);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        read(key);
+                    }
+                }
+                selector.selectedKeys().clear();
+
+                long now = DistributedMaster.monotonicMillis();
+                boolean heartbeat = now >= nextHeartbeat;
+                if (heartbeat) {
+                    nextHeartbeat = now + HEARTBEAT_MILLIS;
+                }
+                for (SelectionKey key : selector.keys()) {
+                    if (key.isValid() && key.attachment() instanceof Connection connection) {
+                        if (heartbeat) {
+                            if (now - connection.channel.getLastReceivedMillis() > timeoutMillis) {
+                                System.err.println("No heartbeat from worker " + connection.worker + " for " + timeoutMillis + " ms");
+                                disconnect(key, connection);
+                                continue;
+                            }
+                            connection.channel.sendEmpty(FrameChannel.HEARTBEAT);
+                        }
+                        write(key, connection);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Socket coordinator failed: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection connection) {
+                    disconnect(key, connection);
+                }
+            }
+            try {
+                server.close();
+                selector.close();
+            } catch (IOException e) {
+                // Closed anyway
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            Connection connection = new Connection(new FrameChannel(channel));
+            channel.register(selector, SelectionKey.OP_READ, connection);
+        }
+    }
+
+    private void read(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (!connection.channel.read((type, payload) -> handleFrame(key, connection, type, payload))) {
+                disconnect(key, connection);
+            }
+        } catch (IOException e) {
+            System.err.println("Connection of worker " + connection.worker + " failed: " + e.getMessage());
+            disconnect(key, connection);
+        }
+    }
+
+    // Write what is queued, and wait for the socket to take more only while something is left
+    private void write(SelectionKey key, Connection connection) {
+        if (!connection.channel.hasPending() && key.interestOps() == SelectionKey.OP_READ) {
+            return;
+        }
+        try {
+            boolean written = connection.channel.flush();
+            key.interestOps(written ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            System.err.println("Connection of worker " + connection.worker + " failed: " + e.getMessage());
+            disconnect(key, connection);
+        }
+    }
+
+    private void handleFrame(SelectionKey key, Connection connection, byte type, ByteBuffer payload) throws IOException {
+        if (connection.worker == 0) {
+            if (type != FrameChannel.HELLO) {
+                throw new IOException("Expected a hello but received a frame of type " + type);
+            }
+            hello(key, connection, payload.getLong());
+            return;
+        }
+        switch (type) {
+            case FrameChannel.CREDIT -> events.addCredit(connection.worker, payload.getInt());
+            case FrameChannel.STATS -> {
+                long[] report = new long[WorkerStatsAggregator.reportLength()];
+                if (payload.remaining() != report.length * Long.BYTES) {
+                    throw new IOException("Statistics of " + payload.remaining() + " bytes");
+                }
+                payload.asLongBuffer().get(report);
+                events.recordStats(connection.worker, report);
+            }
+            case FrameChannel.HEARTBEAT -> {
+                // Only keeps the connection alive
+            }
+            default -> throw new IOException("Unexpected frame of type " + type);
+        }
+    }
+
+    // Give the connection the number of its worker, and tell the worker
+    private void hello(SelectionKey key, Connection connection, long session) throws IOException {
+        int worker = 0;
+        boolean restarted = true;
+        for (int w = 1; w <= maxWorkers && worker == 0; w++) {
+            if (used[w] && sessions[w] == session) {
+                worker = w;
+                restarted = false;
+            }
+        }
+        if (worker > 0) {
+            // The old connection of a reconnecting worker may not have timed out yet
+            Connection old = workers.get(worker);
+            if (old != null) {
+                disconnect(old.channel.getChannel().keyFor(selector), old);
+            }
+        } else {
+            for (int w = 1; w <= maxWorkers && worker == 0; w++) {
+                if (!used[w]) {
+                    worker = w;
+                }
+            }
+            for (int w = 1; w <= maxWorkers && worker == 0; w++) {
+                if (workers.get(w) == null) {
+                    worker = w;
+                }
+            }
+        }
+        if (worker == 0) {
+            throw new IOException("All " + maxWorkers + " workers are connected");
+        }
+        connection.worker = worker;
+        sessions[worker] = session;
+        used[worker] = true;
+        workers.set(worker, connection);
+        connection.channel.sendInt(FrameChannel.WELCOME, worker);
+        write(key, connection);
+        events.workerJoined(worker, restarted);
+    }
+
+    private void disconnect(SelectionKey key, Connection connection) {
+        if (key != null) {
+            key.cancel();
+        }
+        // Batches that were not written give their writers back
+        connection.channel.close();
+        int worker = connection.worker;
+        if (worker > 0 && workers.compareAndSet(worker, connection, null)) {
+            events.workerLeft(worker);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.prog3.sentimentanalysis;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ *  Worker side of the socket transport, connects to the SocketCoordinator over TCP.
+* One I/O thread connects, says hello with the session id of this process, queues the batches it receives
+* and writes the credit and statistics. When the connection fails or the heartbeats of the coordinator stop
+* it connects again, waiting longer after every failure, and gives up when the coordinator cannot be reached
+* for too long. After a reconnect the worker gives its full capacity as credit again, because the coordinator
+* counted the reviews of the old connection as lost, and the credit of those reviews is not sent anymore.
+* */
+public class SocketWorkerLink implements DistributedWorker.Transport {
+    private static final long HEARTBEAT_MILLIS = 1000;
+    private static final long MIN_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 2000;
+    // Queued when the link gives up, so receive returns null
+    private static final ReviewBatch.Batch GIVE_UP = new ReviewBatch.Batch(-1, -1, List.of());
+
+    private final InetSocketAddress coordinator;
+    private final long timeoutMillis;
+    private final long giveUpMillis;
+    // Tells the coordinator whether it sees this process again or a new one
+    private final long session = ThreadLocalRandom.current().nextLong();
+    private final LinkedBlockingQueue<ReviewBatch.Batch> batches = new LinkedBlockingQueue<>();
+    // Connection the coordinator has welcomed, null while there is none
+    private volatile FrameChannel channel;
+    private volatile Selector selector;
+    private volatile int workerNumber;
+    private volatile boolean statsPending;
+    private volatile boolean running;
+    // Guarded by this: the first credit, the reviews received on this connection and not credited,
+    // and the reviews of old connections whose credit is not sent
+    private int capacity;
+    private int outstanding;
+    private int staleCredit;
+
+    public SocketWorkerLink(String host, int port, long timeoutMillis, long giveUpMillis) {
+        this.coordinator = new InetSocketAddress(host, port);
+        this.timeoutMillis = timeoutMillis;
+        this.giveUpMillis = giveUpMillis;
+    }
+
+    // Start connecting on the I/O thread
+    public void start() {
+        running = true;
+        Thread ioThread = new Thread(this::runLoop, "socket-worker");
+        ioThread.setDaemon(true);
+        ioThread.start();
+    }
+
+    // Number the coordinator gave this worker, 0 before it was welcomed
+    public int getWorkerNumber() {
+        return workerNumber;
+    }
+
+    // Close the connection and stop connecting again
+    public void close() {
+        running = false;
+        Selector current = selector;
+        if (current != null) {
+            current.wakeup();
+        }
+    }
+
+    @Override
+    public ReviewBatch.Batch receive() throws InterruptedException {
+        ReviewBatch.Batch batch = batches.take();
+        if (batch == GIVE_UP) {
+            // Every later call returns null as well
+            batches.add(GIVE_UP);
+            return null;
+        }
+        return batch;
+    }
+
+    @Override
+    public void sendCredit(int reviews) {
+        synchronized (this) {
+            if (capacity == 0) {
+                // Sent once the coordinator welcomed this worker
+                capacity = reviews;
+                if (channel == null) {
+                    return;
+                }
+            } else {
+                int stale = Math.min(staleCredit, reviews);
+                staleCredit -= stale;
+                reviews -= stale;
+                outstanding -= reviews;
+            }
+            FrameChannel current = channel;
+            if (reviews == 0 || current == null) {
+                return;
+            }
+            current.sendInt(FrameChannel.CREDIT, reviews);
+        }
+        selector.wakeup();
+    }
+
+    @Override
+    public void sendStats(long[] report) {
+        FrameChannel current = channel;
+        // If the last report is still on its way this one is skipped, the frame holds a copy of the report
+        if (current != null && !statsPending) {
+            statsPending = true;
+            current.sendLongs(FrameChannel.STATS, report, () -> statsPending = false);
+            selector.wakeup();
+        }
+    }
+
+    // Connect until the link is closed or gives up, runs on the I/O thread
+    private void runLoop() {
+        try {
+            connectUntilGivenUp();
+        } finally {
+            // Even when the I/O thread fails, the worker must not wait for batches forever
+            batches.add(GIVE_UP);
+        }
+    }
+
+    private void connectUntilGivenUp() {
+        long backoff = MIN_BACKOFF_MILLIS;
+        long downSince = DistributedMaster.monotonicMillis();
+        while (running) {
+            try (Selector connectionSelector = Selector.open()) {
+                SocketChannel socketChannel = SocketChannel.open();
+                try {
+                    socketChannel.socket().connect(coordinator, (int) timeoutMillis);
+                    if (serve(new FrameChannel(socketChannel), connectionSelector)) {
+                        // It was welcomed, so the next failure starts counting again
+                        backoff = MIN_BACKOFF_MILLIS;
+                        downSince = DistributedMaster.monotonicMillis();
+                    }
+                } finally {
+                    socketChannel.close();
+                }
+            } catch (IOException e) {
+                System.err.println("Connection to the coordinator " + coordinator + " failed: " + e.getMessage());
+            }
+            if (!running) {
+                return;
+            }
+            if (DistributedMaster.monotonicMillis() - downSince > giveUpMillis) {
+                System.err.println("The coordinator " + coordinator + " could not be reached for " + giveUpMillis + " ms");
+                return;
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+        }
+    }
+
+    // Read and write one connection until it fails, returns whether the coordinator welcomed it
+    private boolean serve(FrameChannel frameChannel, Selector connectionSelector) throws IOException {
+        boolean[] welcomed = {false};
+        SelectionKey key = frameChannel.getChannel().register(connectionSelector, SelectionKey.OP_READ);
+        selector = connectionSelector;
+        ByteBuffer hello = ByteBuffer.allocate(Long.BYTES).putLong(session).flip();
+        frameChannel.send(FrameChannel.HELLO, hello, null);
+        long nextHeartbeat = DistributedMaster.monotonicMillis() + HEARTBEAT_MILLIS;
+        try {
+            while (running) {
+                connectionSelector.select(250);
+                connectionSelector.selectedKeys().clear();
+                if (!frameChannel.read((type, payload) -> handleFrame(frameChannel, type, payload, welcomed))) {
+                    throw new IOException("The coordinator closed the connection");
+                }
+                long now = DistributedMaster.monotonicMillis();
+                if (now >= nextHeartbeat) {
+                    nextHeartbeat = now + HEARTBEAT_MILLIS;
+                    if (now - frameChannel.getLastReceivedMillis() > timeoutMillis) {
+                        throw new IOException("No heartbeat for " + timeoutMillis + " ms");
+                    }
+                    frameChannel.sendEmpty(FrameChannel.HEARTBEAT);
+                }
+                boolean written = frameChannel.flush();
+                key.interestOps(written ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        } catch (IOException e) {
+            System.err.println("Connection to the coordinator lost: " + e.getMessage());
+        } finally {
+            synchronized (this) {
+                // Credit is only sent on a connection the coordinator welcomed
+                channel = null;
+                // The coordinator counts the reviews of this connection as lost, their credit is not returned
+                staleCredit += outstanding;
+                outstanding = 0;
+            }
+            frameChannel.close();
+            statsPending = false;
+        }
+        return welcomed[0];
+    }
+
+    private void handleFrame(FrameChannel frameChannel, byte type, ByteBuffer payload, boolean[] welcomed) throws IOException {
+        switch (type) {
+            case FrameChannel.WELCOME -> {
+                welcomed[0] = true;
+                synchronized (this) {
+                    channel = frameChannel;
+                    // The coordinator starts every connection from the full capacity
+                    if (capacity > 0) {
+                        frameChannel.sendInt(FrameChannel.CREDIT, capacity);
+                    }
+                }
+                workerNumber = payload.getInt();
+                System.out.println("Connected to the coordinator " + coordinator + " as worker " + workerNumber);
+            }
+            case FrameChannel.BATCH -> {
+                ReviewBatch.Batch batch = ReviewBatch.decode(payload);
+                synchronized (this) {
+                    outstanding += batch.reviews().size();
+                }
+                batches.add(batch);
+            }
+            case FrameChannel.HEARTBEAT -> {
+                // Only keeps the connection alive
+            }
+            default -> throw new IOException("Unexpected frame of type " + type);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.prog3.sentimentanalysis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ *  The purpose of this class is to take the work off the WebSocket receive thread.
+* A message goes through four stages: receive, parse, analyze and sink.
+* The receive thread only puts the raw message into the first ring buffer, every other stage runs on
+* its own threads and hands the message to the next stage through another bounded ring buffer.
+* Parse and sink threads can be virtual threads, analysis always runs on platform threads that each
+* own their own SentimentAnalyzer. The depth of every ring can be read while the pipeline runs.
+* When the first ring is full, the overload policy decides which message is dropped.
+* The parse stage sends reviews the shared DuplicateFilter has seen before straight to the sink, marked as
+* duplicates, so every published message reaches the sink once. It reads the fields the shared
+* ResultsLog keeps when there is one, and records
+* the parse time of every message in the shared PipelineMetrics.
+* */
+public class StagedPipeline {
+
+    /**
+     *  Sizes of the rings and threads of the stages.
+    * When virtualThreads is set, the parse and sink stages run on virtual threads.
+    * */
+    public record Config(int ringCapacity, RingBuffer.WaitStrategy waitStrategy, int parseThreads,
+                         int analyzeThreads, int sinkThreads, boolean virtualThreads,
+                         LoadShedder.Policy overloadPolicy, double sampleRate) {
+    }
+
+    /**
+     *  One message on its way through the stages.
+    * Each stage fills in its own field before passing the event on.
+    * */
+    public static final class ReviewEvent {
+        private final String payload;
+        private final long receivedNanos;
+        private String reviewText;
+        // Fields of the review, only read when the duplicate filter or the results log needs them
+        private JsonParser.Review review;
+        private String sentiment;
+        private boolean duplicate;
+
+        ReviewEvent(String payload, long receivedNanos) {
+            this.payload = payload;
+            this.receivedNanos = receivedNanos;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+
+        // Time the message was received, from System.nanoTime
+        public long getReceivedNanos() {
+            return receivedNanos;
+        }
+
+        public String getReviewText() {
+            return reviewText;
+        }
+
+        // The review with its ASIN, reviewer, rating and time, null if they were not read
+        public JsonParser.Review getReview() {
+            return review;
+        }
+
+        public String getSentiment() {
+            return sentiment;
+        }
+
+        // True when the review was received before, it was not analyzed and has no sentiment
+        public boolean isDuplicate() {
+            return duplicate;
+        }
+    }
+
+    private final Config config;
+    private final String topic;
+    private final Supplier<SentimentAnalyzer> analyzerFactory;
+    private final Consumer<ReviewEvent> sink;
+    // Rings in front of the parse, analyze and sink stages
+    private final RingBuffer<ReviewEvent> parseRing;
+    private final RingBuffer<ReviewEvent> analyzeRing;
+    private final RingBuffer<ReviewEvent> sinkRing;
+    // Applies the overload policy when the parse ring is full
+    private final LoadShedder<ReviewEvent> loadShedder;
+    private final List<Thread> threads = new ArrayList<>();
+    private final PipelineMetrics metrics = PipelineMetrics.getShared();
+
+    public StagedPipeline(Config config, String topic, Supplier<SentimentAnalyzer> analyzerFactory,
+                          Consumer<ReviewEvent> sink) {
+        if (config.parseThreads() < 1 || config.analyzeThreads() < 1 || config.sinkThreads() < 1) {
+            throw new IllegalArgumentException("Every stage needs at least one thread: " + config);
+        }
+        this.config = config;
+        this.topic = topic;
+        this.analyzerFactory = analyzerFactory;
+        this.sink = sink;
+        this.parseRing = new RingBuffer<>(config.ringCapacity(), config.waitStrategy());
+        this.analyzeRing = new RingBuffer<>(config.ringCapacity(), config.waitStrategy());
+        this.sinkRing = new RingBuffer<>(config.ringCapacity(), config.waitStrategy());
+        this.loadShedder = new LoadShedder<>(config.overloadPolicy(), config.sampleRate());
+    }
+
+    // Start the threads of all stages
+    public synchronized void start() {
+        if (!threads.isEmpty()) {
+            return;
+        }
+        startStage("pipeline-parse", config.parseThreads(), config.virtualThreads(), this::runParse);
+        startStage("pipeline-analyze", config.analyzeThreads(), false, this::runAnalyze);
+        startStage("pipeline-sink", config.sinkThreads(), config.virtualThreads(), this::runSink);
+    }
+
+    // Receive stage, called on the WebSocket thread, returns false if the overload policy dropped the message
+    public boolean publish(String payload) throws InterruptedException {
+        return loadShedder.submit(parseRing, new ReviewEvent(payload, System.nanoTime()));
+    }
+
+    public LoadShedder<?> getLoadShedder() {
+        return loadShedder;
+    }
+
+    public int getParseQueueDepth() {
+        return parseRing.size();
+    }
+
+    public int getAnalyzeQueueDepth() {
+        return analyzeRing.size();
+    }
+
+    public int getSinkQueueDepth() {
+        return sinkRing.size();
+    }
+
+    // Stop all stages, messages still in the rings are discarded
+    public synchronized void shutdown() {
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        threads.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "Queue depths: parse " + getParseQueueDepth() + "/" + parseRing.capacity()
+                + ", analyze " + getAnalyzeQueueDepth() + "/" + analyzeRing.capacity()
+                + ", sink " + getSinkQueueDepth() + "/" + sinkRing.capacity();
+    }
+
+    private void startStage(String name, int count, boolean virtual, Runnable loop) {
+        for (int i = 0; i < count; i++) {
+            Thread.Builder builder = virtual ? Thread.ofVirtual() : Thread.ofPlatform().daemon(true);
+            threads.add(builder.name(name + "-" + i).start(loop));
+        }
+    }
+
+    // Parse stage, messages without a review and duplicates go straight to the sink
+    private void runParse() {
+        try {
+            while (true) {
+                ReviewEvent event = parseRing.take();
+                long start = System.nanoTime();
+                DuplicateFilter duplicateFilter = DuplicateFilter.getShared();
+                if (duplicateFilter != null || ResultsLog.getShared() != null) {
+                    // Reviews received before never reach the analyze stage
+                    JsonParser.Review review = JsonParser.extractReview(event.payload, topic);
+                    metrics.recordExtract(start);
+                    if (review != null && duplicateFilter != null && duplicateFilter.isDuplicate(review)) {
+                        event.duplicate = true;
+                        sinkRing.put(event);
+                        continue;
+                    }
+                    event.review = review;
+                    event.reviewText = review != null ? review.reviewText() : null;
+                } else {
+                    event.reviewText = JsonParser.extractReviewText(event.payload, topic);
+                    metrics.recordExtract(start);
+                }
+                if (event.reviewText != null) {
+                    analyzeRing.put(event);
+                } else {
+                    sinkRing.put(event);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Pipeline stopped
+        }
+    }
+
+    // Analyze stage, the analyzer is created on the stage thread and never leaves it
+    private void runAnalyze() {
+        SentimentAnalyzer analyzer = analyzerFactory.get();
+        try {
+            while (true) {
+                ReviewEvent event = analyzeRing.take();
+                try {
+                    event.sentiment = analyzer.analyzeSentiment(event.reviewText);
+                } catch (RuntimeException e) {
+                    System.err.println("Error analyzing review: " + e.getMessage());
+                }
+                sinkRing.put(event);
+            }
+        } catch (InterruptedException e) {
+            // Pipeline stopped
+        }
+    }
+
+    private void runSink() {
+        try {
+            while (true) {
+                sink.accept(sinkRing.take());
+            }
+        } catch (InterruptedException e) {
+            // Pipeline stopped
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.prog3.sentimentanalysis;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.SplittableRandom;
+
+/**
+ *  Generates reviews that look like the ones of the sentiment server, in the Amazon review format.
+* The text is built from sentences of positive, negative and neutral words, so every analyzer has
+* real work to do, and its length in words is drawn from a configurable distribution.
+* The same seed always gives the same reviews. An instance is not thread-safe.
+* */
+public class SyntheticReviewGenerator {
+
+    /**
+     *  Distribution of the number of words in a review around a mean, never above a maximum.
+    * */
+    public enum LengthDistribution {
+        FIXED, UNIFORM, EXPONENTIAL, LOGNORMAL;
+
+        public static LengthDistribution parse(String name) {
+            return valueOf(name.trim().toUpperCase());
+        }
+    }
+
+    // Spread of the lognormal distribution, real review lengths have a long tail
+    private static final double LOGNORMAL_SIGMA = 0.8;
+    private static final long FIRST_REVIEW_TIME = 1_262_304_000L;
+    private static final String[] POSITIVE = {"great", "excellent", "love", "perfect", "amazing", "happy",
+            "recommend", "works", "beautiful", "favorite", "solid", "fun", "worth", "best", "nice"};
+    private static final String[] NEGATIVE = {"bad", "broke", "terrible", "disappointed", "waste", "poor",
+            "cheap", "returned", "awful", "boring", "useless", "worst", "annoying", "flimsy", "problem"};
+    private static final String[] NEUTRAL = {"the", "this", "it", "was", "and", "for", "my", "with", "after",
+            "a", "of", "is", "product", "album", "toy", "car", "dog", "price", "time", "days", "quality",
+            "bought", "used", "first", "sound", "size", "color", "box", "really", "not", "very", "but"};
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final SplittableRandom random;
+    private final StringBuilder text = new StringBuilder();
+
+    public SyntheticReviewGenerator(long seed) {
+        this.random = new SplittableRandom(seed);
+    }
+
+    // Number of words of the next review
+    public int nextWordCount(LengthDistribution distribution, int meanWords, int maxWords) {
+        double words = switch (distribution) {
+            case FIXED -> meanWords;
+            case UNIFORM -> 1 + random.nextDouble() * (2.0 * meanWords - 1);
+            case EXPONENTIAL -> -meanWords * Math.log(1 - random.nextDouble());
+            case LOGNORMAL -> Math.exp(Math.log(meanWords) - LOGNORMAL_SIGMA * LOGNORMAL_SIGMA / 2
+                    + LOGNORMAL_SIGMA * random.nextGaussian());
+        };
+        return (int) Math.max(1, Math.min(maxWords, Math.round(words)));
+    }
+
+    // Review text of the given number of words, in sentences of 5 to 20 words that lean positive or negative
+    public String nextReviewText(int words) {
+        text.setLength(0);
+        // Every review leans one way, so the classes are not all neutral
+        double positiveShare = random.nextDouble();
+        int sentenceLeft = 0;
+        for (int i = 0; i < words; i++) {
+            if (sentenceLeft == 0) {
+                sentenceLeft = 5 + random.nextInt(16);
+                if (i > 0) {
+                    text.append(". ");
+                }
+            } else {
+                text.append(' ');
+            }
+            String word;
+            if (random.nextInt(4) == 0) {
+                word = random.nextDouble() < positiveShare ? pick(POSITIVE) : pick(NEGATIVE);
+            } else {
+                word = pick(NEUTRAL);
+            }
+            if (text.isEmpty() || text.charAt(text.length() - 2) == '.') {
+                text.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+            } else {
+                text.append(word);
+            }
+            sentenceLeft--;
+        }
+        return text.append('.').toString();
+    }
+
+    // Review object with the fields of the Amazon dataset, the text has the given number of words
+    public String nextReviewJson(int words) {
+        String reviewText = nextReviewText(words);
+        StringWriter writer = new StringWriter(reviewText.length() + 200);
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeStringField("reviewerID", "A" + Long.toString(random.nextLong(1L << 40), 36).toUpperCase());
+            generator.writeStringField("asin", "B" + String.format("%09d", random.nextInt(100_000)));
+            generator.writeStringField("reviewText", reviewText);
+            generator.writeNumberField("overall", 1.0 + random.nextInt(5));
+            generator.writeNumberField("unixReviewTime", FIRST_REVIEW_TIME + random.nextInt(400_000_000));
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    // Server message for a topic, {"<topic>":"<escaped review json>"}
+    public static String toMessage(String topic, String reviewJson) {
+        StringWriter writer = new StringWriter(reviewJson.length() + topic.length() + 32);
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeStringField(topic, reviewJson);
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    private String pick(String[] words) {
+        return words[random.nextInt(words.length)];
+    }
+}
@@ -0,0 +1,106 @@
+package com.prog3.sentimentanalysis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  Sentiment analyzer that only runs the full CoreNLP parse when a cheap estimate is not good enough.
+* Every review is first scored by the LexiconClassifier. If its confidence reaches the threshold,
+* the lexicon label is the result. Otherwise the review escalates to the full
+* tokenize, ssplit, parse, sentiment pipeline of the SentimentAnalyzer.
+* A threshold of 0 accepts every lexicon estimate that is not neutral, a threshold above 1 always escalates.
+* */
+public class TieredSentimentAnalyzer extends SentimentAnalyzer {
+    // Default confidence the lexicon estimate needs to be accepted
+    public static final double DEFAULT_THRESHOLD = 0.6;
+
+    /**
+     *  Counts of the reviews answered by each tier, shared by all analyzers of a mode.
+    * */
+    public static class TierStats {
+        private final LongAdder fastPath = new LongAdder();
+        private final LongAdder escalated = new LongAdder();
+
+        public long getFastPath() {
+            return fastPath.sum();
+        }
+
+        public long getEscalated() {
+            return escalated.sum();
+        }
+
+        // Fraction of reviews labelled by the lexicon
+        public double getFastPathFraction() {
+            long fast = fastPath.sum();
+            long total = fast + escalated.sum();
+            return total == 0 ? 0.0 : (double) fast / total;
+        }
+
+        @Override
+        public String toString() {
+            long fast = getFastPath();
+            long full = getEscalated();
+            double fastFraction = getFastPathFraction();
+            return String.format("Tiers: lexicon %d (%.1f%%), full parse %d (%.1f%%)",
+                    fast, fastFraction * 100, full, (fast + full == 0 ? 0.0 : 1 - fastFraction) * 100);
+        }
+    }
+
+    private final LexiconClassifier lexicon = new LexiconClassifier();
+    private final double threshold;
+    private final TierStats stats;
+
+    public TieredSentimentAnalyzer(double threshold, TierStats stats) {
+        this.threshold = threshold;
+        this.stats = stats;
+    }
+
+    @Override
+    public String analyzeSentiment(String reviewText) {
+        if (reviewText == null) {
+            return null;
+        }
+        String sentiment = fastPath(reviewText);
+        if (sentiment != null) {
+            return sentiment;
+        }
+        stats.escalated.increment();
+        return super.analyzeSentiment(reviewText);
+    }
+
+    @Override
+    public List<String> analyzeSentiments(List<String> reviewTexts, int numThreads) {
+        List<String> sentiments = new ArrayList<>(reviewTexts);
+        // Only the uncertain reviews go through the pipeline, the rest keep the lexicon label
+        List<String> uncertain = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < reviewTexts.size(); i++) {
+            String reviewText = reviewTexts.get(i);
+            String sentiment = reviewText != null ? fastPath(reviewText) : null;
+            sentiments.set(i, sentiment);
+            if (reviewText != null && sentiment == null) {
+                uncertain.add(reviewText);
+                positions.add(i);
+            }
+        }
+        if (!uncertain.isEmpty()) {
+            stats.escalated.add(uncertain.size());
+            List<String> escalated = super.analyzeSentiments(uncertain, numThreads);
+            for (int j = 0; j < escalated.size(); j++) {
+                sentiments.set(positions.get(j), escalated.get(j));
+            }
+        }
+        return sentiments;
+    }
+
+    // Returns the lexicon label if it is confident enough, null otherwise
+    private String fastPath(String reviewText) {
+        LexiconClassifier.Result result = lexicon.classify(reviewText);
+        if (result.confidence() >= threshold && !result.sentiment().equals("Neutral")) {
+            stats.fastPath.increment();
+            return result.sentiment();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,62 @@
+package com.prog3.sentimentanalysis;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *  Runs a small bundled corpus of reviews through an analyzer before anything is measured.
+* This loads the shared models and lets the JIT compile the hot code, so the first seconds
+* of a run are not counted as zeros. The reviews go straight to the NLP pipeline, past the
+* cache and the metrics, so the warm-up leaves no trace in the results.
+* Running the warm-up under -XX:ArchiveClassesAtExit also records every class the analysis needs
+* in a class-data-sharing archive, which makes the next start faster.
+* */
+public final class Warmup {
+    // Default number of times the corpus is analyzed
+    public static final int DEFAULT_ROUNDS = 1;
+    private static final String CORPUS = "/warmup-reviews.txt";
+
+    private Warmup() {
+    }
+
+    // Analyze the corpus the given number of times, returns the number of analyzed reviews
+    public static int run(SentimentAnalyzer analyzer, int rounds) {
+        long start = System.nanoTime();
+        List<String> reviews = corpus();
+        int analyzed = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (String review : reviews) {
+                analyzer.computeSentiment(review);
+                analyzed++;
+            }
+        }
+        System.out.println("Warm-up analyzed " + analyzed + " reviews in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return analyzed;
+    }
+
+    // The bundled reviews, one per line
+    static List<String> corpus() {
+        InputStream stream = Warmup.class.getResourceAsStream(CORPUS);
+        if (stream == null) {
+            throw new IllegalStateException("Missing warm-up corpus " + CORPUS);
+        }
+        List<String> reviews = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    reviews.add(line.trim());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return reviews;
+    }
+}
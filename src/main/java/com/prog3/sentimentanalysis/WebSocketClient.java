@@ -1,123 +1,250 @@
     package com.prog3.sentimentanalysis;
 
-    import java.io.FileWriter;
     import java.io.IOException;
-    import java.io.PrintWriter;
+    import java.nio.file.Path;
+    import java.util.HashMap;
     import java.util.List;
     import java.util.Arrays;
-    import lombok.Setter;
+    import java.util.Map;
     import org.springframework.boot.CommandLineRunner;
+    import org.springframework.context.annotation.Profile;
     import org.springframework.stereotype.Component;
-    import org.springframework.web.socket.client.standard.StandardWebSocketClient;
-    import org.springframework.web.socket.WebSocketSession;
-    import org.springframework.web.socket.TextMessage;
-    import org.springframework.web.socket.handler.TextWebSocketHandler;
 
-    import java.util.concurrent.ExecutorService;
+    import java.util.concurrent.CancellationException;
     import java.util.concurrent.Executors;
+    import java.util.concurrent.ForkJoinPool;
     import java.util.concurrent.ScheduledExecutorService;
     import java.util.concurrent.TimeUnit;
+    import java.util.concurrent.atomic.AtomicInteger;
 
     /**
      * WebSocketClient class serves as a client that connects to the un server to receive text messages,
      * analyzes the sentiment of the received messages, and subscribes to a specified topic.
-     * It contains two implementations, sequential and parallel sentiment analysis.
+     * In parallel mode it can subscribe to several topics, which share the workers by their weights.
+     * The messages can also be replayed from a recorded file instead, see ReviewSource.
+     * It contains four implementations, sequential, parallel, batched and pipelined sentiment analysis.
      * Which mode is run is decided based on the arguments from command line.
+     * It does not run when the "loadgen" profile starts the local LoadGeneratorServer instead.
      */
     @Component
-    public class WebSocketClient extends TextWebSocketHandler implements CommandLineRunner {
+    @Profile("!loadgen")
+    public class WebSocketClient implements CommandLineRunner {
         // Constants to check which mode is chosen
         private static final String SEQUENTIAL_MODE = "sequential";
         private static final String PARALLEL_MODE = "parallel";
-        // Output file for the results
+        private static final String BATCHED_MODE = "batched";
+        private static final String PIPELINED_MODE = "pipelined";
+        // Constants to check which analyzer is chosen
+        private static final String FULL_ANALYZER = "full";
+        private static final String TIERED_ANALYZER = "tiered";
+        private static final String SENTENCES_ANALYZER = "sentences";
+        // CSV file the metrics of every second are written to
         private static String output_file;
-        private ExecutorService executorService;
+        // Fixed pool of workers used in parallel mode
+        private ParallelSentimentEngine parallelEngine;
+        // Number of workers and queue capacity for parallel mode
+        private int numThreads = ParallelSentimentEngine.DEFAULT_WORKERS;
+        private int queueCapacity = ParallelSentimentEngine.DEFAULT_QUEUE_CAPACITY;
+        // Collects reviews into batches in batched mode
+        private MicroBatcher microBatcher;
+        // Maximum batch size and maximum wait for a batch to fill in batched mode
+        private int batchSize = MicroBatcher.DEFAULT_BATCH_SIZE;
+        private int batchWaitMillis = (int) MicroBatcher.DEFAULT_MAX_WAIT_MILLIS;
+        // Analyzer used by every mode, "full" for the CoreNLP pipeline, "tiered" for the lexicon fast path
+        // or "sentences" to score all sentences of a review in parallel
+        private String analyzerType = FULL_ANALYZER;
+        // Confidence the lexicon needs before a review skips the full parse in the tiered analyzer
+        private double tierThreshold = TieredSentimentAnalyzer.DEFAULT_THRESHOLD;
+        // Counts of the reviews answered by each tier, shared by all tiered analyzers
+        private final TieredSentimentAnalyzer.TierStats tierStats = new TieredSentimentAnalyzer.TierStats();
+        // Pool that scores the sentences of a review in parallel, and its number of threads
+        private ForkJoinPool sentencePool;
+        private int sentenceThreads = Runtime.getRuntime().availableProcessors();
+        // Parse, analyze and sink stages in pipelined mode
+        private StagedPipeline stagedPipeline;
+        // Ring size, wait strategy and threads of the stages in pipelined mode
+        private int ringSize = 1024;
+        private RingBuffer.WaitStrategy waitStrategy = RingBuffer.WaitStrategy.BLOCKING;
+        private int parseThreads = 1;
+        private int sinkThreads = 1;
+        private boolean virtualThreads = false;
+        // What happens to new reviews when the queue of the mode is full
+        private LoadShedder.Policy overloadPolicy = LoadShedder.Policy.BLOCK;
+        private double sampleRate = LoadShedder.DEFAULT_SAMPLE_RATE;
+        // Shedder of the queue of the current mode, null in sequential mode
+        private LoadShedder<?> loadShedder;
+        // Memory budget of the sentiment cache in megabytes
+        private int cacheMegabytes = (int) (SentimentCache.DEFAULT_BUDGET_BYTES / (1024 * 1024));
+        // Memory budget of the duplicate filter in megabytes
+        private int dedupMegabytes = (int) (DuplicateFilter.DEFAULT_BUDGET_BYTES / (1024 * 1024));
         // Variable to store the mode from command line
         private String mode;
-        // Variable to store the topic from command line
+        // Variable to store the topic from command line, the first one when there are several
         private String topic;
-        @Setter
-        private WebSocketSession session;
+        // Topics with their share of the workers, from --topics or the single --topic
+        private List<WeightedFairQueue.Lane> topicLanes;
+        // Lane of the worker queue of every topic
+        private final Map<String, Integer> topicIndex = new HashMap<>();
+        // Server URI or "file:" path the reviews are read from
+        private String source = ReviewSource.DEFAULT_SERVER_URI;
+        // How a file source is replayed
+        private FileReviewSource.Mode replayMode = FileReviewSource.Mode.FAST;
+        private double replayRate = FileReviewSource.DEFAULT_RATE;
+        private double replaySpeed = 1;
+        private boolean replayLoop = false;
+        // File the messages from the server are recorded to, null if they are not recorded
+        private Path recordFile;
+        // Directory of the results log and its snapshots, null if results are not kept
+        private Path resultsDirectory;
+        // Source of the messages, started once the mode is set up
+        private ReviewSource reviewSource;
         // Review counter used to check how many reviews were analyzed for a second
-        private int reviewCount = 0;
-        private final SentimentAnalyzer sentimentAnalyzer;
-        // File writer for saving review counts
-        private PrintWriter fileWriter;
-        public WebSocketClient() {
-            this.sentimentAnalyzer = new SentimentAnalyzer();
-        }
-        // After connection, create a session, then send a message to subscribe to topic
-        @Override
-        public void afterConnectionEstablished(WebSocketSession session) {
-            System.out.println("Connected to WebSocket server.");
-            this.session = session;
-            subscribeToTopic(topic);
-        }
-        // Send a message to subscribe to a topic
-        public void subscribeToTopic(String topic) {
-            try {
-                session.sendMessage(new TextMessage("topic: " + topic));
-                System.out.println("Subscribed to topic: " + topic);
-            } catch (Exception e) {
-                // TODO: Check more robust option
-                e.printStackTrace();
+        private final AtomicInteger reviewCount = new AtomicInteger();
+        // Analyzer used in sequential mode, in parallel mode every worker owns its own, all of them share one pipeline
+        private SentimentAnalyzer sentimentAnalyzer;
+        // Latencies, queue depths, sentiment classes and GC pauses of this process
+        private final PipelineMetrics metrics = PipelineMetrics.getShared();
+        // Port of the local metrics endpoint, 0 if it is not started
+        private int metricsPort = 0;
+        // Log the metrics of every second are written to
+        private MetricsLog metricsLog;
+        // Times the bundled corpus is analyzed before the measuring starts, and whether to stop after it
+        private int warmupRounds = Warmup.DEFAULT_ROUNDS;
+        private boolean warmupOnly = false;
+        public WebSocketClient() {    }
+        // Handle the json, called on the thread of the review source
+        private void handleMessage(String sourceTopic, String receivedMessage) {
+            long receivedNanos = System.nanoTime();
+            if (mode.equals(PIPELINED_MODE)) {
+                // The receive thread only enqueues, parsing and analysis happen in the stages
+                try {
+                    stagedPipeline.publish(receivedMessage);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return;
+            }
+            String messageTopic = topic;
+            int lane = 0;
+            if (topicLanes.size() > 1) {
+                // Several topics share the workers, the topic of the message decides its lane.
+                // It comes with the message from a server, a replayed file only has it in the message
+                messageTopic = sourceTopic != null ? sourceTopic : JsonParser.messageTopic(receivedMessage);
+                Integer index = messageTopic != null ? topicIndex.get(messageTopic) : null;
+                if (index == null) {
+                    System.err.println("Message of an unknown topic: " + messageTopic);
+                    return;
+                }
+                lane = index;
+            }
+            String extractedReview;
+            // The review with its other fields, null when only the text is read
+            JsonParser.Review review = null;
+            DuplicateFilter duplicateFilter = DuplicateFilter.getShared();
+            if (duplicateFilter != null || ResultsLog.getShared() != null) {
+                // The asin and the reviewer are part of the fingerprint and of the results log, so the whole review is read
+                review = JsonParser.extractReview(receivedMessage, messageTopic);
+                metrics.recordExtract(receivedNanos);
+                if (review != null && duplicateFilter != null && duplicateFilter.isDuplicate(review)) {
+                    return;
+                }
+                extractedReview = review != null ? review.reviewText() : null;
+            } else {
+                extractedReview = JsonParser.extractReviewText(receivedMessage, messageTopic);
+                metrics.recordExtract(receivedNanos);
             }
-        }
-
-        // Handle the json
-        @Override
-        protected void handleTextMessage(WebSocketSession session, TextMessage message) {
-            System.out.println("Received message: " + message.getPayload());
-            String receivedMessage = message.getPayload();
-            String extractedReview = JsonParser.extractReviewText(receivedMessage, topic);
 
             if (mode.equals(SEQUENTIAL_MODE)) {
-                analyzeSentimentSequential(extractedReview);
+                analyzeSentimentSequential(extractedReview, review, receivedNanos);
             } else if (mode.equals(PARALLEL_MODE)) {
-                analyzeSentimentParallel(extractedReview);
+                analyzeSentimentParallel(extractedReview, review, lane, receivedNanos);
+            } else if (mode.equals(BATCHED_MODE)) {
+                analyzeSentimentBatched(extractedReview, review, receivedNanos);
             } else {
                 System.err.println("Invalid mode: " + mode);
             }
         }
 
         // Method to execute the analysis in sequential order
-        private void analyzeSentimentSequential(String reviewText) {
+        private void analyzeSentimentSequential(String reviewText, JsonParser.Review review, long receivedNanos) {
             // Check if the review exists
             if (reviewText != null) {
                 // Analyze the review
-                String sentiment = sentimentAnalyzer.analyzeSentiment(reviewText);
-                // If the sentiment exists, print it and save to file
-                if (sentiment != null) {
-                    System.out.println("Sentiment for review: " + sentiment);
-                } else {
-                    System.err.println("Review text not found in the message.");
-                }
+                reportResult(0, review, sentimentAnalyzer.analyzeSentiment(reviewText));
+                metrics.recordEndToEnd(receivedNanos);
             } else {
-                System.err.println("Review text not found in the message.");
+                reportSentiment(null);
             }
-            // Increase the review counter for a second
-            reviewCount++;
         }
         // Method to execute the analysis in parallel order
-        private void analyzeSentimentParallel(String reviewText) {
-            if (executorService == null) {
-                // Initialize thread pool
-                executorService = Executors.newCachedThreadPool();
+        private void analyzeSentimentParallel(String reviewText, JsonParser.Review review, int lane, long receivedNanos) {
+            if (reviewText == null) {
+                reportSentiment(null);
+                return;
+            }
+            try {
+                // Queue the review for the worker pool, the overload policy decides what happens when the queue is full
+                if (review != null) {
+                    parallelEngine.submit(lane, review, receivedNanos);
+                } else {
+                    parallelEngine.submit(lane, reviewText, receivedNanos);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Method to execute the analysis in batches
+        private void analyzeSentimentBatched(String reviewText, JsonParser.Review review, long receivedNanos) {
+            if (reviewText == null) {
+                reportSentiment(null);
+                return;
+            }
+            try {
+                // The result is reported by the batch thread once the batch of this review is annotated
+                microBatcher.submit(reviewText).whenComplete((sentiment, error) -> {
+                    // Reviews dropped by the overload policy are cancelled and not counted
+                    if (!(error instanceof CancellationException)) {
+                        reportResult(0, review, sentiment);
+                        metrics.recordEndToEnd(receivedNanos);
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-            // Submit task to thread pool
-            executorService.submit(() -> analyzeSentimentSequential(reviewText));
         }
-        // Establish a server connection
-        public void connectToServer(){
-            org.springframework.web.socket.client.WebSocketClient webSocketClient = new StandardWebSocketClient();
-            String serverUri = "wss://prog3.student.famnit.upr.si/sentiment";
-            webSocketClient.doHandshake(this, serverUri);
+        // Create the analyzer chosen on the command line
+        private SentimentAnalyzer createAnalyzer() {
+            if (analyzerType.equals(TIERED_ANALYZER)) {
+                return new TieredSentimentAnalyzer(tierThreshold, tierStats);
+            } else if (analyzerType.equals(SENTENCES_ANALYZER)) {
+                return new SentenceParallelAnalyzer(sentencePool);
+            }
+            return new SentimentAnalyzer();
+        }
+        // Report the result of one review and append it to the results log, if one is kept and the fields were read
+        private void reportResult(int lane, JsonParser.Review review, String sentiment) {
+            reportSentiment(sentiment);
+            ResultsLog resultsLog = ResultsLog.getShared();
+            if (resultsLog != null && review != null) {
+                resultsLog.append(lane, review, sentiment);
+            }
+        }
+        // Print the result of one review and count it for the current second
+        private void reportSentiment(String sentiment) {
+            // If the sentiment exists, print it
+            if (sentiment != null) {
+                System.out.println("Sentiment for review: " + sentiment);
+            } else {
+                System.err.println("Review text not found in the message.");
+            }
+            metrics.recordSentiment(sentiment);
+            // Increase the review counter for a second
+            reviewCount.incrementAndGet();
         }
-
         @Override
         public void run(String... args) throws Exception {
             if (args.length < 2) {
-                System.err.println("Please specify the mode (sequential or parallel) as the first argument." +
+                System.err.println("Please specify the mode (sequential, parallel, batched or pipelined) as the first argument." +
                         "and the topic as the second argument (music, toys, pet-supplies, automotive, sport).");
                 return;
             }
@@ -128,54 +255,287 @@
                     mode = arg.substring(7).toLowerCase();
                 } else if (arg.startsWith("--topic=")) {
                     topic = arg.substring(8).toLowerCase();
+                } else if (arg.startsWith("--topics=")) {
+                    try {
+                        topicLanes = WeightedFairQueue.Lane.parseList(arg.substring(9));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Invalid value for --topics: " + arg.substring(9));
+                        return;
+                    }
+                } else if (arg.startsWith("--threads=")) {
+                    numThreads = parseIntArgument(arg.substring(10), "--threads", 1);
+                } else if (arg.startsWith("--queue-size=")) {
+                    queueCapacity = parseIntArgument(arg.substring(13), "--queue-size", 1);
+                } else if (arg.startsWith("--cache-mb=")) {
+                    cacheMegabytes = parseIntArgument(arg.substring(11), "--cache-mb", 0);
+                } else if (arg.startsWith("--dedup-mb=")) {
+                    dedupMegabytes = parseIntArgument(arg.substring(11), "--dedup-mb", 0);
+                } else if (arg.startsWith("--batch-size=")) {
+                    batchSize = parseIntArgument(arg.substring(13), "--batch-size", 1);
+                } else if (arg.startsWith("--batch-wait-ms=")) {
+                    batchWaitMillis = parseIntArgument(arg.substring(16), "--batch-wait-ms", 0);
+                } else if (arg.startsWith("--analyzer=")) {
+                    analyzerType = arg.substring(11).toLowerCase();
+                } else if (arg.startsWith("--tier-threshold=")) {
+                    tierThreshold = parseDoubleArgument(arg.substring(17), "--tier-threshold");
+                } else if (arg.startsWith("--ring-size=")) {
+                    ringSize = parseIntArgument(arg.substring(12), "--ring-size", 1);
+                } else if (arg.startsWith("--wait-strategy=")) {
+                    try {
+                        waitStrategy = RingBuffer.WaitStrategy.parse(arg.substring(16));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Invalid value for --wait-strategy: " + arg.substring(16));
+                        return;
+                    }
+                } else if (arg.startsWith("--parse-threads=")) {
+                    parseThreads = parseIntArgument(arg.substring(16), "--parse-threads", 1);
+                } else if (arg.startsWith("--sink-threads=")) {
+                    sinkThreads = parseIntArgument(arg.substring(15), "--sink-threads", 1);
+                } else if (arg.startsWith("--overload=")) {
+                    try {
+                        overloadPolicy = LoadShedder.Policy.parse(arg.substring(11));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Invalid value for --overload: " + arg.substring(11));
+                        return;
+                    }
+                } else if (arg.startsWith("--sample-rate=")) {
+                    sampleRate = parseDoubleArgument(arg.substring(14), "--sample-rate");
+                } else if (arg.startsWith("--virtual-threads=")) {
+                    virtualThreads = Boolean.parseBoolean(arg.substring(18));
+                } else if (arg.startsWith("--sentence-threads=")) {
+                    sentenceThreads = parseIntArgument(arg.substring(19), "--sentence-threads", 1);
+                } else if (arg.startsWith("--source=")) {
+                    source = arg.substring(9);
+                } else if (arg.startsWith("--replay=")) {
+                    try {
+                        replayMode = FileReviewSource.Mode.parse(arg.substring(9));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Invalid value for --replay: " + arg.substring(9));
+                        return;
+                    }
+                } else if (arg.startsWith("--replay-rate=")) {
+                    replayRate = parseDoubleArgument(arg.substring(14), "--replay-rate");
+                } else if (arg.startsWith("--replay-speed=")) {
+                    replaySpeed = parseDoubleArgument(arg.substring(15), "--replay-speed");
+                } else if (arg.startsWith("--replay-loop=")) {
+                    replayLoop = Boolean.parseBoolean(arg.substring(14));
+                } else if (arg.startsWith("--record=")) {
+                    recordFile = Path.of(arg.substring(9));
+                } else if (arg.startsWith("--results-dir=")) {
+                    resultsDirectory = Path.of(arg.substring(14));
+                } else if (arg.startsWith("--metrics-port=")) {
+                    metricsPort = parseIntArgument(arg.substring(15), "--metrics-port", 0);
+                } else if (arg.startsWith("--warmup-rounds=")) {
+                    warmupRounds = parseIntArgument(arg.substring(16), "--warmup-rounds", 0);
+                } else if (arg.startsWith("--warmup-only=")) {
+                    warmupOnly = Boolean.parseBoolean(arg.substring(14));
                 }
             }
+            if (numThreads < 1 || queueCapacity < 1 || cacheMegabytes < 0 || batchSize < 1 || batchWaitMillis < 0 || tierThreshold < 0 || sentenceThreads < 1
+                    || ringSize < 1 || parseThreads < 1 || sinkThreads < 1 || sampleRate < 0 || sampleRate > 1
+                    || replayRate <= 0 || replaySpeed <= 0 || metricsPort < 0 || warmupRounds < 0 || dedupMegabytes < 0) {
+                return;
+            }
+            // Check if a valid analyzer is entered
+            if (!analyzerType.equals(FULL_ANALYZER) && !analyzerType.equals(TIERED_ANALYZER)
+                    && !analyzerType.equals(SENTENCES_ANALYZER)) {
+                System.err.println("Invalid analyzer: " + analyzerType);
+                return;
+            }
+            if (analyzerType.equals(SENTENCES_ANALYZER)) {
+                sentencePool = new ForkJoinPool(sentenceThreads);
+            }
+            // Size of the sentiment cache shared by all analyzers, 0 disables it
+            SentimentCache.configureShared(cacheMegabytes * 1024L * 1024L);
+            // Size of the filter that skips reviews received before, 0 disables it
+            DuplicateFilter.configureShared(dedupMegabytes * 1024L * 1024L);
             // Check if a valid mode is entered
-            if (!mode.equals(SEQUENTIAL_MODE) && !mode.equals(PARALLEL_MODE)) {
+            if (!mode.equals(SEQUENTIAL_MODE) && !mode.equals(PARALLEL_MODE) && !mode.equals(BATCHED_MODE)
+                    && !mode.equals(PIPELINED_MODE)) {
                 System.err.println("Invalid mode: " + mode);
                 return;
             }
 
+            // A single --topic is a list of one topic
+            if (topicLanes == null || topicLanes.isEmpty()) {
+                if (topic == null) {
+                    System.err.println("Please specify the topic with --topic=<topic> or --topics=<topic>[:<weight>],...");
+                    return;
+                }
+                topicLanes = List.of(new WeightedFairQueue.Lane(topic, 1));
+            }
+            topic = topicLanes.get(0).name();
+
             // List of allowed topics
             List<String> allowedTopics = Arrays.asList("movies", "electronics", "music", "toys", "pet-supplies", "automotive", "sport");
-            if (!allowedTopics.contains(topic.toLowerCase())) {
-                System.err.println("Invalid topic: " + topic);
+            for (WeightedFairQueue.Lane lane : topicLanes) {
+                if (!allowedTopics.contains(lane.name()) || topicIndex.containsKey(lane.name())) {
+                    System.err.println("Invalid topic: " + lane.name());
+                    return;
+                }
+                topicIndex.put(lane.name(), topicIndex.size());
+            }
+            // Only the workers of parallel mode are shared fairly by several topics
+            if (topicLanes.size() > 1 && !mode.equals(PARALLEL_MODE)) {
+                System.err.println("Several topics are only supported in parallel mode.");
+                return;
+            }
+
+            // Open the results log, which counts the results of earlier runs from its snapshot and segments
+            try {
+                ResultsLog.configureShared(resultsDirectory, topicLanes.stream().map(WeightedFairQueue.Lane::name).toList());
+            } catch (IOException e) {
+                System.err.println("Cannot open the results log in " + resultsDirectory + ": " + e.getMessage());
                 return;
             }
 
-            output_file = mode.equals(SEQUENTIAL_MODE) ? "sequential_review_counts.txt" : "parallel_review_counts.txt";
+            // Load the models and warm up the analysis before anything is measured
+            if (warmupRounds > 0 || warmupOnly) {
+                Warmup.run(createAnalyzer(), Math.max(warmupRounds, 1));
+            }
+            if (warmupOnly) {
+                // Used to record a class-data-sharing archive with -XX:ArchiveClassesAtExit
+                System.out.println("Warm-up finished.");
+                System.exit(0);
+            }
+
+            output_file = mode + "_metrics.csv";
+
+            // Create the analyzer for sequential mode, the worker pool for parallel mode or the batcher for batched mode
+            if (mode.equals(SEQUENTIAL_MODE)) {
+                sentimentAnalyzer = createAnalyzer();
+            } else if (mode.equals(BATCHED_MODE)) {
+                microBatcher = new MicroBatcher(createAnalyzer(), batchSize, batchWaitMillis, numThreads, queueCapacity,
+                        overloadPolicy, sampleRate);
+                microBatcher.start();
+                loadShedder = microBatcher.getLoadShedder();
+                metrics.registerQueue("batch_queue", microBatcher::getQueueDepth);
+                System.out.println("Batched mode with batches of up to " + batchSize + " reviews, waiting at most "
+                        + batchWaitMillis + " ms, annotated on " + numThreads + " threads.");
+            } else if (mode.equals(PIPELINED_MODE)) {
+                StagedPipeline.Config config = new StagedPipeline.Config(ringSize, waitStrategy, parseThreads,
+                        numThreads, sinkThreads, virtualThreads, overloadPolicy, sampleRate);
+                stagedPipeline = new StagedPipeline(config, topic, this::createAnalyzer, event -> {
+                    if (event.isDuplicate()) {
+                        return;
+                    }
+                    reportResult(0, event.getReview(), event.getSentiment());
+                    metrics.recordEndToEnd(event.getReceivedNanos());
+                });
+                stagedPipeline.start();
+                loadShedder = stagedPipeline.getLoadShedder();
+                metrics.registerQueue("parse_ring", stagedPipeline::getParseQueueDepth);
+                metrics.registerQueue("analyze_ring", stagedPipeline::getAnalyzeQueueDepth);
+                metrics.registerQueue("sink_ring", stagedPipeline::getSinkQueueDepth);
+                System.out.println("Pipelined mode with " + config);
+            } else {
+                parallelEngine = new ParallelSentimentEngine(numThreads, queueCapacity, overloadPolicy, sampleRate,
+                        topicLanes, this::createAnalyzer, this::reportResult);
+                parallelEngine.start();
+                loadShedder = parallelEngine.getLoadShedder();
+                metrics.registerQueue("worker_queue", parallelEngine::getQueueDepth);
+                System.out.println("Parallel mode with " + numThreads + " workers and a queue of " + queueCapacity + " reviews.");
+                if (topicLanes.size() > 1) {
+                    // Throughput and latency of every topic are reported on their own
+                    for (WeightedFairQueue.Lane lane : topicLanes) {
+                        metrics.registerTopic(lane.name());
+                    }
+                    System.out.println("Topics sharing the workers: " + topicLanes);
+                }
+            }
 
-            // Clear the output file at the beginning
-            clearOutputFile();
+            // Start the metrics log, and the endpoint if a port is given
+            metrics.monitorGarbageCollection();
+            try {
+                metricsLog = new MetricsLog(Path.of(output_file), metrics.csvHeader());
+                if (metricsPort > 0) {
+                    new MetricsHttpServer(metricsPort, metrics);
+                }
+            } catch (IOException e) {
+                System.err.println("Cannot start the metrics: " + e.getMessage());
+                return;
+            }
 
-            // Connect to the server to get reviews
-            connectToServer();
+            // Connect to the server or open the recorded file to get reviews
+            FileReviewSource.Replay replay = new FileReviewSource.Replay(replayMode, replayRate, replaySpeed, replayLoop);
+            reviewSource = ReviewSource.create(source, topicLanes.stream().map(WeightedFairQueue.Lane::name).toList(), replay, recordFile);
+            reviewSource.start(this::handleMessage);
+            // The application ends with System.exit, the source and the results log are closed on the way out
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                reviewSource.close();
+                // Writes a last snapshot and cuts the open segment down to its records
+                if (ResultsLog.getShared() != null) {
+                    ResultsLog.getShared().close();
+                }
+            }, "client-shutdown"));
 
             // Schedule the task to output review counts every second
             ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
             scheduler.scheduleAtFixedRate(() -> {
-                System.out.println("Reviews Analyzed per Second: " + reviewCount);
-                saveToFile(reviewCount);
-                reviewCount = 0; // Reset after 1 second
+                // Read and reset the counter in one step, so no review is lost between the two
+                int reviewsPerSecond = reviewCount.getAndSet(0);
+                long dropped = 0;
+                long shed = 0;
+                if (loadShedder != null) {
+                    dropped = loadShedder.takeDropped();
+                    shed = loadShedder.takeShed();
+                    System.out.println("Reviews Analyzed per Second: " + reviewsPerSecond
+                            + ", dropped: " + dropped + ", shed: " + shed);
+                } else {
+                    System.out.println("Reviews Analyzed per Second: " + reviewsPerSecond);
+                }
+                PipelineMetrics.Report report = metrics.takeReport(reviewsPerSecond, dropped, shed);
+                System.out.println(report.summary());
+                if (SentimentCache.getShared() != null) {
+                    System.out.println(SentimentCache.getShared());
+                }
+                if (DuplicateFilter.getShared() != null) {
+                    System.out.println(DuplicateFilter.getShared());
+                }
+                if (analyzerType.equals(TIERED_ANALYZER)) {
+                    System.out.println(tierStats);
+                }
+                if (stagedPipeline != null) {
+                    System.out.println(stagedPipeline);
+                }
+                if (ResultsLog.getShared() != null) {
+                    System.out.println(ResultsLog.getShared());
+                }
+                metricsLog.write(report.toCsvRow());
             }, 0, 1, TimeUnit.SECONDS);
+            if (ResultsLog.getShared() != null) {
+                // Save the counts now and then, so a restart only reads the results logged after the last snapshot
+                ResultsLog resultsLog = ResultsLog.getShared();
+                scheduler.scheduleAtFixedRate(resultsLog::snapshot, ResultsLog.DEFAULT_SNAPSHOT_SECONDS,
+                        ResultsLog.DEFAULT_SNAPSHOT_SECONDS, TimeUnit.SECONDS);
+            }
         }
 
-        // Method to write results to a text file
-        private void saveToFile(int reviewsPerSecond) {
-            try (PrintWriter writer = new PrintWriter(new FileWriter(output_file, true))) {
-                writer.println("Reviews processed per second: " + reviewsPerSecond);
-            } catch (IOException e) {
-                e.printStackTrace();
+        // Parse a number of at least min from a command line argument, returns -1 if it is not valid
+        private static int parseIntArgument(String value, String name, int min) {
+            try {
+                int number = Integer.parseInt(value);
+                if (number >= min) {
+                    return number;
+                }
+            } catch (NumberFormatException e) {
+                // Reported below
             }
+            System.err.println("Invalid value for " + name + ": " + value);
+            return -1;
         }
 
-        // Method to clear the output file
-        private void clearOutputFile() {
-            try (PrintWriter writer = new PrintWriter(new FileWriter(output_file))) {
-                writer.print("");
-            } catch (IOException e) {
-                e.printStackTrace();
+        // Parse a non-negative decimal number from a command line argument, returns -1 if it is not valid
+        private static double parseDoubleArgument(String value, String name) {
+            try {
+                double number = Double.parseDouble(value);
+                if (number >= 0) {
+                    return number;
+                }
+            } catch (NumberFormatException e) {
+                // Reported below
             }
+            System.err.println("Invalid value for " + name + ": " + value);
+            return -1;
         }
     }
-
@@ -0,0 +1,151 @@
+package com.prog3.sentimentanalysis;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *  Review source that connects to a sentiment server over WebSocket and subscribes to a topic.
+* With several topics it opens one session for each, so every topic arrives on its own connection.
+* Every text message of the server is passed to the handler on the WebSocket receive thread of its session.
+* Optionally every message is also appended to a JSONL record file, with the time it was received
+* added as a "_ts" field in milliseconds, so FileReviewSource can replay it at the original pace.
+* The record file is flushed after every message and closed with the source.
+* */
+public class WebSocketReviewSource implements ReviewSource {
+    private final String serverUri;
+    private final List<String> topics;
+    // File the messages are recorded to, null if they are not recorded
+    private final Path recordFile;
+    private BufferedWriter recordWriter;
+    private MessageHandler messageHandler;
+    // One session for every topic
+    private final List<TopicSession> sessions = new ArrayList<>();
+
+    public WebSocketReviewSource(String serverUri, String topic, Path recordFile) {
+        this(serverUri, List.of(topic), recordFile);
+    }
+
+    public WebSocketReviewSource(String serverUri, List<String> topics, Path recordFile) {
+        this.serverUri = serverUri;
+        this.topics = List.copyOf(topics);
+        this.recordFile = recordFile;
+    }
+
+    @Override
+    public synchronized void start(MessageHandler messageHandler) {
+        this.messageHandler = messageHandler;
+        if (recordFile != null) {
+            try {
+                recordWriter = Files.newBufferedWriter(recordFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                System.out.println("Recording messages to " + recordFile);
+            } catch (IOException e) {
+                System.err.println("Cannot record messages to " + recordFile + ": " + e.getMessage());
+            }
+        }
+        org.springframework.web.socket.client.WebSocketClient webSocketClient = new StandardWebSocketClient();
+        for (String topic : topics) {
+            TopicSession session = new TopicSession(topic);
+            sessions.add(session);
+            webSocketClient.doHandshake(session, serverUri);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            for (TopicSession session : sessions) {
+                session.close();
+            }
+            if (recordWriter != null) {
+                recordWriter.close();
+                recordWriter = null;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Append the message with its receive time as the first field, the sessions of all topics share the file
+    private synchronized void record(String payload) {
+        if (recordWriter == null || !payload.startsWith("{")) {
+            return;
+        }
+        try {
+            recordWriter.write("{\"_ts\":");
+            recordWriter.write(Long.toString(System.currentTimeMillis()));
+            if (payload.length() > 2) {
+                recordWriter.write(',');
+            }
+            recordWriter.write(payload, 1, payload.length() - 1);
+            recordWriter.newLine();
+            // Flushed with every message, so a recording cut off by the end of the process ends with a whole line
+            recordWriter.flush();
+        } catch (IOException e) {
+            System.err.println("Error recording message: " + e.getMessage());
+        }
+    }
+
+    /**
+     *  The connection of one topic.
+    * */
+    private class TopicSession extends TextWebSocketHandler {
+        private final String topic;
+        private WebSocketSession session;
+
+        private TopicSession(String topic) {
+            this.topic = topic;
+        }
+
+        // After connection, create a session, then send a message to subscribe to topic
+        @Override
+        public void afterConnectionEstablished(WebSocketSession session) {
+            System.out.println("Connected to WebSocket server " + serverUri + ".");
+            this.session = session;
+            subscribeToTopic(topic);
+        }
+
+        // Send a message to subscribe to a topic
+        public void subscribeToTopic(String topic) {
+            try {
+                session.sendMessage(new TextMessage("topic: " + topic));
+                System.out.println("Subscribed to topic: " + topic);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        @Override
+        protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+            String payload = message.getPayload();
+            if (recordWriter != null) {
+                record(payload);
+            }
+            // The session knows its topic, so the message does not have to be parsed for it
+            messageHandler.onMessage(topic, payload);
+        }
+
+        @Override
+        public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+            System.out.println("WebSocket connection of topic " + topic + " closed: " + status);
+        }
+
+        private void close() throws IOException {
+            if (session != null && session.isOpen()) {
+                session.close();
+            }
+        }
+    }
+}
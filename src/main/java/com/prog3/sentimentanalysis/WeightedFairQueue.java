@@ -0,0 +1,237 @@
+package com.prog3.sentimentanalysis;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *  Bounded queue with one lane for every topic, taken from in weighted-fair order.
+* Every lane has a weight, and while several lanes have reviews waiting, each gets a share of the
+* takes in proportion to its weight, so a busy topic cannot starve a quiet one. A lane that is
+* empty does not save up its share: when reviews arrive again it starts from the current virtual
+* time (start-time fair queuing). Within a lane the order is first in, first out.
+* Every lane is bounded on its own and is a LoadShedder.Target, so the overload policy is applied per topic.
+* With a single lane it is a plain bounded FIFO queue.
+* */
+public class WeightedFairQueue<T> {
+
+    /**
+     *  A topic and its share of the analysis.
+    * */
+    public record Lane(String name, double weight) {
+        public Lane {
+            if (!(weight > 0)) {
+                throw new IllegalArgumentException("Weight of topic " + name + " must be positive: " + weight);
+            }
+        }
+
+        // Parse a list like "music:3,toys,sport:0.5", a topic without a weight has weight 1
+        public static List<Lane> parseList(String list) {
+            List<Lane> lanes = new ArrayList<>();
+            for (String entry : list.split(",")) {
+                String trimmed = entry.trim().toLowerCase();
+                if (trimmed.isEmpty()) {
+                    continue;
+                }
+                int colon = trimmed.indexOf(':');
+                if (colon < 0) {
+                    lanes.add(new Lane(trimmed, 1));
+                } else {
+                    lanes.add(new Lane(trimmed.substring(0, colon), Double.parseDouble(trimmed.substring(colon + 1))));
+                }
+            }
+            return lanes;
+        }
+    }
+
+    private final List<Lane> lanes;
+    private final ArrayDeque<T>[] items;
+    private final int laneCapacity;
+    // Virtual time at which each lane is served next, the lane with the smallest one goes first
+    private final double[] pass;
+    private double virtualTime;
+    private int size;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition[] notFull;
+    private final List<LoadShedder.Target<T>> targets = new ArrayList<>();
+
+    @SuppressWarnings("unchecked")
+    public WeightedFairQueue(List<Lane> lanes, int laneCapacity) {
+        if (lanes.isEmpty()) {
+            throw new IllegalArgumentException("At least one lane is needed");
+        }
+        if (laneCapacity < 1) {
+            throw new IllegalArgumentException("Lane capacity must be at least 1: " + laneCapacity);
+        }
+        this.lanes = List.copyOf(lanes);
+        this.laneCapacity = laneCapacity;
+        this.items = (ArrayDeque<T>[]) new ArrayDeque<?>[lanes.size()];
+        this.pass = new double[lanes.size()];
+        this.notFull = new Condition[lanes.size()];
+        for (int lane = 0; lane < items.length; lane++) {
+            items[lane] = new ArrayDeque<>();
+            notFull[lane] = lock.newCondition();
+            targets.add(new LaneTarget(lane));
+        }
+    }
+
+    public List<Lane> getLanes() {
+        return lanes;
+    }
+
+    // The lane as a target of a LoadShedder
+    public LoadShedder.Target<T> lane(int lane) {
+        return targets.get(lane);
+    }
+
+    // Index of the lane of a topic, -1 if there is none
+    public int indexOf(String name) {
+        for (int lane = 0; lane < lanes.size(); lane++) {
+            if (lanes.get(lane).name().equals(name)) {
+                return lane;
+            }
+        }
+        return -1;
+    }
+
+    // Wait for the next item in weighted-fair order
+    public T take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Move up to max waiting items in weighted-fair order, without waiting, returns how many were moved
+    public int drainTo(Collection<? super T> target, int max) {
+        lock.lock();
+        try {
+            int moved = 0;
+            while (size > 0 && moved < max) {
+                target.add(dequeue());
+                moved++;
+            }
+            return moved;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            for (int lane = 0; lane < items.length; lane++) {
+                items[lane].clear();
+                notFull[lane].signalAll();
+            }
+            size = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Take from the waiting lane with the smallest pass, the lock must be held and an item must be waiting
+    private T dequeue() {
+        int next = -1;
+        for (int lane = 0; lane < items.length; lane++) {
+            if (!items[lane].isEmpty() && (next < 0 || pass[lane] < pass[next])) {
+                next = lane;
+            }
+        }
+        virtualTime = pass[next];
+        pass[next] += 1 / lanes.get(next).weight();
+        size--;
+        notFull[next].signal();
+        return items[next].poll();
+    }
+
+    // Add to a lane that has room, the lock must be held
+    private void enqueue(int lane, T item) {
+        if (items[lane].isEmpty()) {
+            // A lane that was idle starts at the current virtual time instead of using the share it missed
+            pass[lane] = Math.max(pass[lane], virtualTime);
+        }
+        items[lane].add(item);
+        size++;
+        notEmpty.signal();
+    }
+
+    private final class LaneTarget implements LoadShedder.Target<T> {
+        private final int lane;
+
+        private LaneTarget(int lane) {
+            this.lane = lane;
+        }
+
+        public boolean offer(T item) {
+            lock.lock();
+            try {
+                if (items[lane].size() >= laneCapacity) {
+                    return false;
+                }
+                enqueue(lane, item);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Remove the oldest item of this lane
+        public T poll() {
+            lock.lock();
+            try {
+                T item = items[lane].poll();
+                if (item != null) {
+                    size--;
+                    notFull[lane].signal();
+                }
+                return item;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public void put(T item) throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                while (items[lane].size() >= laneCapacity) {
+                    notFull[lane].await();
+                }
+                enqueue(lane, item);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public int size() {
+            lock.lock();
+            try {
+                return items[lane].size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public int capacity() {
+            return laneCapacity;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.prog3.sentimentanalysis;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ *  Turns the statistics the workers of the distributed mode report into one per-second series on the master's clock.
+* A worker never resets its counters, every report carries the totals since it started: a sequence number,
+* the time on the worker's own monotonic clock, the number of analyzed reviews and the count of every sentiment class.
+* A lost or late report therefore loses nothing, the next one contains its counts.
+* The master maps the time of every worker onto its own clock with the smallest delay seen between a report's
+* worker time and its arrival, so the drift between the clocks of the nodes does not move counts between seconds.
+* The count of a worker at a second boundary is interpolated between the reports around it, and the difference to
+* the previous boundary is that worker's share of the second. Boundaries lag behind the current time, so the
+* reports after a boundary have arrived before it is used.
+* A worker that reported before and then stays silent longer than the stall time is reported as stalled,
+* its counts stay where they were until it reports again. Workers are numbered from 1, the aggregator knows nothing
+* about the transport.
+* */
+public class WorkerStatsAggregator {
+    // Fields of a report before the class counts
+    private static final int SEQUENCE = 0;
+    private static final int TIME = 1;
+    private static final int ANALYZED = 2;
+    private static final int COUNTS = 3;
+
+    /**
+     *  Counts of the workers in one second of the series.
+    * */
+    public record Second(long boundaryMillis, long reviews, int[] sentimentCounts, List<Integer> stalled) {
+    }
+
+    // A report, with its time on the worker's clock
+    private record Sample(long workerMillis, long[] totals) {
+    }
+
+    private static final class Worker {
+        private final Deque<Sample> samples = new ArrayDeque<>();
+        private long lastSequence = -1;
+        private long lastReceivedMillis;
+        // Smallest difference between the arrival of a report and its worker time
+        private long offsetMillis = Long.MAX_VALUE;
+        // Totals at the last boundary, the counts of a second are the difference to these
+        private long[] boundaryTotals;
+    }
+
+    private final Worker[] workers;
+    private final int fields;
+    private final long stallMillis;
+
+    public WorkerStatsAggregator(int workers, long stallMillis) {
+        this.workers = new Worker[workers + 1];
+        for (int worker = 1; worker <= workers; worker++) {
+            this.workers[worker] = new Worker();
+        }
+        this.fields = 1 + PipelineMetrics.sentimentClassCount();
+        this.stallMillis = stallMillis;
+    }
+
+    // Length of a report, the worker fills it with fillReport
+    public static int reportLength() {
+        return COUNTS + PipelineMetrics.sentimentClassCount();
+    }
+
+    // Fill a report of the worker's totals, the sentiment counts are in the order of PipelineMetrics
+    public static void fillReport(long[] report, long sequence, long workerMillis, long analyzed, long[] sentimentTotals) {
+        report[SEQUENCE] = sequence;
+        report[TIME] = workerMillis;
+        report[ANALYZED] = analyzed;
+        System.arraycopy(sentimentTotals, 0, report, COUNTS, sentimentTotals.length);
+    }
+
+    // Add a report of a worker that arrived at the given time of the master's clock, older reports are ignored
+    public synchronized void record(int worker, long[] report, long receivedMillis) {
+        Worker state = workers[worker];
+        if (report[SEQUENCE] <= state.lastSequence) {
+            return;
+        }
+        state.lastSequence = report[SEQUENCE];
+        state.lastReceivedMillis = receivedMillis;
+        state.offsetMillis = Math.min(state.offsetMillis, receivedMillis - report[TIME]);
+        long[] totals = new long[fields];
+        System.arraycopy(report, ANALYZED, totals, 0, fields);
+        state.samples.addLast(new Sample(report[TIME], totals));
+        if (state.boundaryTotals == null) {
+            state.boundaryTotals = new long[fields];
+        }
+    }
+
+    // Start over with a worker that was restarted, its reports count from zero again.
+    // The counts it reported before stay in the seconds they were taken in
+    public synchronized void resetWorker(int worker) {
+        workers[worker] = new Worker();
+    }
+
+    // Counts of the second that ends at the boundary, on the master's clock. Boundaries must not go backwards
+    public synchronized Second takeSecond(long boundaryMillis, long nowMillis) {
+        long reviews = 0;
+        int[] sentimentCounts = new int[fields - 1];
+        List<Integer> stalled = new ArrayList<>();
+        for (int worker = 1; worker < workers.length; worker++) {
+            Worker state = workers[worker];
+            if (state.boundaryTotals == null) {
+                continue;
+            }
+            if (nowMillis - state.lastReceivedMillis > stallMillis) {
+                stalled.add(worker);
+            }
+            long[] totals = totalsAt(state, boundaryMillis);
+            reviews += totals[0] - state.boundaryTotals[0];
+            for (int i = 1; i < fields; i++) {
+                sentimentCounts[i - 1] += (int) (totals[i] - state.boundaryTotals[i]);
+            }
+            state.boundaryTotals = totals;
+            // Keep the last report before the boundary, the next second is interpolated from it
+            while (state.samples.size() > 1 && mappedTime(state, secondSample(state)) <= boundaryMillis) {
+                state.samples.removeFirst();
+            }
+        }
+        return new Second(boundaryMillis, reviews, sentimentCounts, stalled);
+    }
+
+    // Totals of a worker at a time of the master's clock, never below the totals of its last boundary
+    private long[] totalsAt(Worker state, long millis) {
+        Sample before = null;
+        Sample after = null;
+        for (Sample sample : state.samples) {
+            if (mappedTime(state, sample) <= millis) {
+                before = sample;
+            } else {
+                after = sample;
+                break;
+            }
+        }
+        long[] totals = new long[fields];
+        for (int i = 0; i < fields; i++) {
+            long value;
+            if (before == null) {
+                // Nothing is known before the first report, its counts go to the first boundary after it
+                value = state.boundaryTotals[i];
+            } else if (after == null) {
+                value = before.totals()[i];
+            } else {
+                long span = after.workerMillis() - before.workerMillis();
+                long elapsed = millis - mappedTime(state, before);
+                value = before.totals()[i] + (after.totals()[i] - before.totals()[i]) * elapsed / Math.max(span, 1);
+            }
+            totals[i] = Math.max(value, state.boundaryTotals[i]);
+        }
+        return totals;
+    }
+
+    private static long mappedTime(Worker state, Sample sample) {
+        return sample.workerMillis() + state.offsetMillis;
+    }
+
+    private static Sample secondSample(Worker state) {
+        Iterator<Sample> iterator = state.samples.iterator();
+        iterator.next();
+        return iterator.next();
+    }
+}
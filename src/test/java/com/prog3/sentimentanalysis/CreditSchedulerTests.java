@@ -0,0 +1,73 @@
+package com.prog3.sentimentanalysis;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CreditSchedulerTests {
+
+	@Test
+	void workerWithTheMostCreditGetsTheBatch() throws InterruptedException {
+		CreditScheduler scheduler = new CreditScheduler(3);
+		scheduler.addCredit(1, 4);
+		scheduler.addCredit(2, 16);
+		scheduler.addCredit(3, 8);
+		assertEquals(new CreditScheduler.Grant(2, 10), scheduler.acquire(10));
+		assertEquals(new CreditScheduler.Grant(3, 8), scheduler.acquire(10));
+		assertEquals(new CreditScheduler.Grant(2, 6), scheduler.acquire(10));
+		assertEquals(new CreditScheduler.Grant(1, 4), scheduler.acquire(10));
+		assertEquals(28, scheduler.getInFlight());
+	}
+
+	@Test
+	void unsentPartOfAGrantIsGivenBack() throws InterruptedException {
+		CreditScheduler scheduler = new CreditScheduler(1);
+		scheduler.addCredit(1, 8);
+		CreditScheduler.Grant grant = scheduler.acquire(8);
+		scheduler.release(grant, 3);
+		assertEquals(5, scheduler.getCredit(1));
+		assertEquals(3, scheduler.getInFlight());
+		scheduler.addCredit(1, 3);
+		assertEquals(0, scheduler.getInFlight());
+	}
+
+	@Test
+	void workerRemovedDuringAGrantLeavesItsReviewsToTheDispatcher() throws InterruptedException {
+		CreditScheduler scheduler = new CreditScheduler(1);
+		scheduler.addCredit(1, 8);
+		scheduler.release(scheduler.acquire(3), 3);
+		CreditScheduler.Grant grant = scheduler.acquire(4);
+		// Only the reviews of the released grant count as in flight, the open grant is the dispatcher's
+		assertEquals(3, scheduler.removeWorker(1));
+		assertFalse(scheduler.release(grant, 4));
+		assertEquals(0, scheduler.getCredit(1));
+		assertEquals(0, scheduler.getInFlight());
+		// Coming back, the worker starts again from its capacity
+		scheduler.addCredit(1, 8);
+		assertTrue(scheduler.release(scheduler.acquire(2), 2));
+		assertEquals(2, scheduler.getInFlight());
+	}
+
+	@Test
+	void dispatcherWaitsForCredit() throws Exception {
+		CreditScheduler scheduler = new CreditScheduler(2);
+		scheduler.addCredit(1, 2);
+		scheduler.acquire(2);
+		CompletableFuture<CreditScheduler.Grant> next = CompletableFuture.supplyAsync(() -> {
+			try {
+				return scheduler.acquire(2);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		Thread.sleep(100);
+		assertFalse(next.isDone());
+		scheduler.addCredit(2, 4);
+		assertEquals(new CreditScheduler.Grant(2, 2), next.get(5, TimeUnit.SECONDS));
+	}
+}
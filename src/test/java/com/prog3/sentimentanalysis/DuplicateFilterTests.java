@@ -0,0 +1,48 @@
+package com.prog3.sentimentanalysis;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DuplicateFilterTests {
+
+	@Test
+	void repeatedReviewsAreDuplicates() {
+		DuplicateFilter filter = new DuplicateFilter(64 * 1024);
+		JsonParser.Review review = new JsonParser.Review("Great album,  loved it", "B000001", "A1", 5, 0);
+		assertFalse(filter.isDuplicate(review));
+		assertTrue(filter.isDuplicate(review));
+		// The text is compared after normalization, like in the sentiment cache
+		assertTrue(filter.isDuplicate(new JsonParser.Review("great album, loved it", "B000001", "A1", 5, 0)));
+		assertEquals(3, filter.getChecked());
+		assertEquals(2, filter.getDuplicates());
+	}
+
+	@Test
+	void sameTextFromAnotherReviewerOrProductIsNotADuplicate() {
+		DuplicateFilter filter = new DuplicateFilter(64 * 1024);
+		assertFalse(filter.isDuplicate(new JsonParser.Review("Five stars", "B000001", "A1", 5, 0)));
+		assertFalse(filter.isDuplicate(new JsonParser.Review("Five stars", "B000001", "A2", 5, 0)));
+		assertFalse(filter.isDuplicate(new JsonParser.Review("Five stars", "B000002", "A1", 5, 0)));
+		assertEquals(0, filter.getDuplicates());
+	}
+
+	@Test
+	void oldReviewsLeaveTheWindowAndFalsePositivesAreRare() {
+		DuplicateFilter filter = new DuplicateFilter(8 * 1024);
+		long window = filter.getEntriesPerGeneration();
+		assertFalse(filter.isDuplicate(-1L));
+		// Fill more than every generation with new fingerprints, the first one is forgotten once its generation is cleared
+		int falsePositives = 0;
+		for (long i = 0; i < window * 5; i++) {
+			if (filter.isDuplicate(i * 0x9e3779b97f4a7c15L)) {
+				falsePositives++;
+			}
+		}
+		assertFalse(filter.isDuplicate(-1L));
+		assertTrue(falsePositives < window * 5 / 100, "false positives: " + falsePositives);
+		assertTrue(filter.isDuplicate((window * 5 - 1) * 0x9e3779b97f4a7c15L));
+	}
+}
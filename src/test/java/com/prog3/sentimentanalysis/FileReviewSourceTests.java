@@ -0,0 +1,69 @@
+package com.prog3.sentimentanalysis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileReviewSourceTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void linesAreSplitAcrossMappedRegions() throws Exception {
+		// Regions of 24 bytes, so most lines start in one region and end in the next
+		Path file = directory.resolve("reviews.jsonl");
+		Files.writeString(file, "{\"music\":\"a\"}\r\n\n{\"toys\":\"très bon\"}\nshort\n{\"music\":\"last\"}", StandardCharsets.UTF_8);
+		List<String> messages = replay(file, new FileReviewSource.Replay(FileReviewSource.Mode.FAST, 1, 1, false), 24, 4);
+		assertEquals(List.of("{\"music\":\"a\"}", "{\"toys\":\"très bon\"}", "short", "{\"music\":\"last\"}"), messages);
+	}
+
+	@Test
+	void rateModeSpacesTheMessages() throws Exception {
+		Path file = directory.resolve("rate.jsonl");
+		Files.writeString(file, "1\n2\n3\n4\n5\n6\n");
+		long start = System.nanoTime();
+		List<String> messages = replay(file, new FileReviewSource.Replay(FileReviewSource.Mode.RATE, 50, 1, false), 1L << 20, 6);
+		// Five gaps of 20 ms
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+		assertEquals(List.of("1", "2", "3", "4", "5", "6"), messages);
+	}
+
+	@Test
+	void originalModeFollowsTheRecordedTimes() throws Exception {
+		Path file = directory.resolve("original.jsonl");
+		Files.writeString(file, "{\"_ts\":1000,\"music\":\"a\"}\n{\"_ts\":1100,\"music\":\"b\"}\n{\"_ts\":1400,\"music\":\"c\"}\n");
+		long start = System.nanoTime();
+		// At twice the recorded speed the 400 ms of the recording take 200 ms
+		List<String> messages = replay(file, new FileReviewSource.Replay(FileReviewSource.Mode.ORIGINAL, 1, 2, false), 1L << 20, 3);
+		long elapsed = System.nanoTime() - start;
+		assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(200));
+		assertTrue(elapsed < TimeUnit.MILLISECONDS.toNanos(2000));
+		assertEquals(3, messages.size());
+		assertTrue(messages.get(2).endsWith("\"music\":\"c\"}"));
+	}
+
+	// Replay the file and wait for the expected number of messages
+	private static List<String> replay(Path file, FileReviewSource.Replay replay, long maxRegion, int expected) throws InterruptedException {
+		List<String> messages = new CopyOnWriteArrayList<>();
+		CountDownLatch received = new CountDownLatch(expected);
+		FileReviewSource source = new FileReviewSource(file, replay, maxRegion);
+		source.start((topic, message) -> {
+			messages.add(message);
+			received.countDown();
+		});
+		assertTrue(received.await(5, TimeUnit.SECONDS));
+		source.close();
+		return messages;
+	}
+}
@@ -0,0 +1,51 @@
+package com.prog3.sentimentanalysis;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class JsonParserTests {
+
+	private static final String MESSAGE = "{\"music\":\"{\\\"reviewerID\\\": \\\"A3V5XBBT7OZG5G\\\", \\\"asin\\\": \\\"0001393774\\\", "
+			+ "\\\"reviewerName\\\": \\\"gflady\\\", \\\"verified\\\": true, \\\"reviewText\\\": \\\"One of my \\\\\\\"very\\\\\\\" favourite albums.\\\", "
+			+ "\\\"overall\\\": 5.0, \\\"reviewTime\\\": \\\"02 23, 2016\\\", \\\"style\\\": {\\\"Format:\\\": \\\" Audio CD\\\"}, "
+			+ "\\\"unixReviewTime\\\": 1456185600}\"}";
+
+	@Test
+	void extractsReviewText() {
+		assertEquals("One of my \"very\" favourite albums.", JsonParser.extractReviewText(MESSAGE, "music"));
+	}
+
+	@Test
+	void extractsReviewWithExtras() {
+		JsonParser.Review review = JsonParser.extractReview(MESSAGE, "music");
+		assertEquals("One of my \"very\" favourite albums.", review.reviewText());
+		assertEquals("0001393774", review.asin());
+		assertEquals("A3V5XBBT7OZG5G", review.reviewerID());
+		assertEquals(5.0, review.overall());
+		assertEquals(1456185600L, review.unixReviewTime());
+	}
+
+	@Test
+	void extractsReviewFromNestedObject() {
+		String message = "{\"other\":[1,{\"a\":2}],\"toys\":{\"asin\":\"B1\",\"reviewText\":\"Great product!\"}}";
+		assertEquals("Great product!", JsonParser.extractReviewText(message, "toys"));
+		assertEquals("B1", JsonParser.extractReview(message, "toys").asin());
+	}
+
+	@Test
+	void returnsNullForOtherTopicOrMissingText() {
+		assertNull(JsonParser.extractReviewText(MESSAGE, "toys"));
+		assertNull(JsonParser.extractReviewText("{\"music\":\"{\\\"asin\\\": \\\"1\\\"}\"}", "music"));
+		assertNull(JsonParser.extractReviewText("not json", "music"));
+	}
+
+	@Test
+	void findsTheTopicOfAMessage() {
+		assertEquals("music", JsonParser.messageTopic(MESSAGE));
+		assertEquals("toys", JsonParser.messageTopic("{\"_ts\":1700000000000,\"toys\":\"{}\"}"));
+		assertNull(JsonParser.messageTopic("not json"));
+	}
+
+}
@@ -0,0 +1,40 @@
+package com.prog3.sentimentanalysis;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTests {
+
+	@Test
+	void percentilesAreWithinTheBucketPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long micros = 1; micros <= 100_000; micros++) {
+			histogram.record(micros);
+		}
+		LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+		assertEquals(100_000, snapshot.getCount());
+		assertEquals(100_000, snapshot.getMax());
+		assertWithin(50_000, snapshot.getPercentile(0.5));
+		assertWithin(99_000, snapshot.getPercentile(0.99));
+		assertWithin(99_900, snapshot.getPercentile(0.999));
+		assertEquals(50_000.5, snapshot.getMean(), 1e-9);
+	}
+
+	@Test
+	void smallValuesAreExactAndResetStartsANewInterval() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(3);
+		histogram.record(7);
+		histogram.recordNanos(12_000);
+		LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+		assertEquals(7, snapshot.getPercentile(0.5));
+		assertEquals(12, snapshot.getPercentile(1));
+		assertEquals(0, histogram.snapshotAndReset().getCount());
+	}
+
+	private static void assertWithin(long expected, long actual) {
+		assertTrue(actual >= expected && actual <= expected * 1.04, "expected about " + expected + " but was " + actual);
+	}
+}
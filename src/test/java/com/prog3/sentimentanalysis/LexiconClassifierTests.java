@@ -0,0 +1,37 @@
+package com.prog3.sentimentanalysis;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LexiconClassifierTests {
+
+	private final LexiconClassifier classifier = new LexiconClassifier();
+
+	@Test
+	void strongScoresGetTheVeryClasses() {
+		assertEquals("Very positive", classifier.classify("Absolutely amazing, a perfect album").sentiment());
+		assertEquals("Positive", classifier.classify("An amazing album").sentiment());
+		assertEquals("Neutral", classifier.classify("The box arrived on Tuesday").sentiment());
+		assertEquals(0.0, classifier.classify("The box arrived on Tuesday").confidence());
+		assertEquals("Very negative", LexiconClassifier.sentimentOf(-LexiconClassifier.STRONG_COMPOUND));
+		assertEquals("Negative", LexiconClassifier.sentimentOf(-0.5));
+	}
+
+	@Test
+	void negationFlipsAndWeakensTheNextWords() {
+		LexiconClassifier.Result amazing = classifier.classify("It is amazing");
+		LexiconClassifier.Result notAmazing = classifier.classify("It is not amazing");
+		assertEquals("Negative", notAmazing.sentiment());
+		assertTrue(notAmazing.confidence() < amazing.confidence());
+		// The negation only reaches three words
+		assertEquals("Positive", classifier.classify("Not that it was one bit amazing").sentiment());
+	}
+
+	@Test
+	void partAfterButDecides() {
+		assertEquals("Negative", classifier.classify("The cover is amazing but the songs are terrible").sentiment());
+		assertEquals("Positive", classifier.classify("The cover is terrible but the songs are amazing").sentiment());
+	}
+}
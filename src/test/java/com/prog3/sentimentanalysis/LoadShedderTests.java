@@ -0,0 +1,65 @@
+package com.prog3.sentimentanalysis;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadShedderTests {
+
+	@Test
+	void dropOldestMakesRoomForTheNewReview() throws InterruptedException {
+		ArrayBlockingQueue<Integer> queue = new ArrayBlockingQueue<>(3);
+		List<Integer> droppedItems = new ArrayList<>();
+		LoadShedder<Integer> shedder = new LoadShedder<>(LoadShedder.Policy.DROP_OLDEST, 0.5, droppedItems::add);
+		LoadShedder.Target<Integer> target = LoadShedder.Target.of(queue);
+		for (int i = 0; i < 5; i++) {
+			assertTrue(shedder.submit(target, i));
+		}
+		assertEquals(List.of(2, 3, 4), List.copyOf(queue));
+		assertEquals(List.of(0, 1), droppedItems);
+		assertEquals(2, shedder.takeDropped());
+		assertEquals(0, shedder.takeDropped());
+		assertEquals(0, shedder.takeShed());
+	}
+
+	@Test
+	void dropNewestKeepsTheQueuedReviews() throws InterruptedException {
+		ArrayBlockingQueue<Integer> queue = new ArrayBlockingQueue<>(2);
+		LoadShedder<Integer> shedder = new LoadShedder<>(LoadShedder.Policy.DROP_NEWEST, 0.5);
+		LoadShedder.Target<Integer> target = LoadShedder.Target.of(queue);
+		assertTrue(shedder.submit(target, 0));
+		assertTrue(shedder.submit(target, 1));
+		assertFalse(shedder.submit(target, 2));
+		assertEquals(List.of(0, 1), List.copyOf(queue));
+		assertEquals(1, shedder.takeDropped());
+	}
+
+	@Test
+	void sampleShedsOnlyOnceTheQueueIsHalfFull() throws InterruptedException {
+		ArrayBlockingQueue<Integer> queue = new ArrayBlockingQueue<>(4);
+		// A rate of 0 sheds every review past the threshold, so the counts do not depend on chance
+		LoadShedder<Integer> shedder = new LoadShedder<>(LoadShedder.Policy.SAMPLE, 0.0);
+		LoadShedder.Target<Integer> target = LoadShedder.Target.of(queue);
+		assertTrue(shedder.submit(target, 0));
+		assertTrue(shedder.submit(target, 1));
+		assertFalse(shedder.submit(target, 2));
+		assertFalse(shedder.submit(target, 3));
+		assertEquals(2, queue.size());
+		assertEquals(2, shedder.takeShed());
+		assertEquals(0, shedder.takeDropped());
+
+		// A rate of 1 never sheds, a full queue still drops the new review
+		LoadShedder<Integer> keepAll = new LoadShedder<>(LoadShedder.Policy.SAMPLE, 1.0);
+		assertTrue(keepAll.submit(target, 2));
+		assertTrue(keepAll.submit(target, 3));
+		assertFalse(keepAll.submit(target, 4));
+		assertEquals(0, keepAll.takeShed());
+		assertEquals(1, keepAll.takeDropped());
+	}
+}
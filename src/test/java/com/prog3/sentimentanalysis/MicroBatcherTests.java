@@ -0,0 +1,86 @@
+package com.prog3.sentimentanalysis;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MicroBatcherTests {
+
+	// Labels every review with its own text and remembers the size of every batch, without the sentiment models
+	private static final class EchoAnalyzer extends SentimentAnalyzer {
+		private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+		EchoAnalyzer() {
+			super(null, "tokenize");
+		}
+
+		@Override
+		public List<String> analyzeSentiments(List<String> reviewTexts, int numThreads) {
+			batchSizes.add(reviewTexts.size());
+			List<String> sentiments = new ArrayList<>();
+			for (String reviewText : reviewTexts) {
+				sentiments.add("sentiment of " + reviewText);
+			}
+			return sentiments;
+		}
+	}
+
+	@Test
+	void resultsOfABatchComeBackInOrder() throws Exception {
+		EchoAnalyzer analyzer = new EchoAnalyzer();
+		MicroBatcher batcher = new MicroBatcher(analyzer, 4, 10_000, 1, 16, LoadShedder.Policy.BLOCK, 0.5);
+		List<CompletableFuture<String>> results = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			results.add(batcher.submit("review " + i));
+		}
+		batcher.start();
+		for (int i = 0; i < 4; i++) {
+			assertEquals("sentiment of review " + i, results.get(i).get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(List.of(4), analyzer.batchSizes);
+		batcher.shutdown();
+	}
+
+	@Test
+	void deadlineFlushesAPartialBatch() throws Exception {
+		EchoAnalyzer analyzer = new EchoAnalyzer();
+		MicroBatcher batcher = new MicroBatcher(analyzer, 32, 50, 1, 64, LoadShedder.Policy.BLOCK, 0.5);
+		batcher.start();
+		long start = System.nanoTime();
+		CompletableFuture<String> first = batcher.submit("first");
+		CompletableFuture<String> second = batcher.submit("second");
+		assertEquals("sentiment of second", second.get(5, TimeUnit.SECONDS));
+		assertEquals("sentiment of first", first.get(5, TimeUnit.SECONDS));
+		// The batch waited for the deadline, not for 32 reviews
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+		assertEquals(List.of(2), analyzer.batchSizes);
+		batcher.shutdown();
+	}
+
+	@Test
+	void droppedReviewsAreCancelled() throws Exception {
+		EchoAnalyzer analyzer = new EchoAnalyzer();
+		MicroBatcher batcher = new MicroBatcher(analyzer, 8, 10, 1, 2, LoadShedder.Policy.DROP_OLDEST, 0.5);
+		CompletableFuture<String> oldest = batcher.submit("oldest");
+		CompletableFuture<String> middle = batcher.submit("middle");
+		CompletableFuture<String> newest = batcher.submit("newest");
+		assertTrue(oldest.isCancelled());
+		assertEquals(1, batcher.getLoadShedder().takeDropped());
+		batcher.start();
+		assertEquals("sentiment of middle", middle.get(5, TimeUnit.SECONDS));
+		assertEquals("sentiment of newest", newest.get(5, TimeUnit.SECONDS));
+		batcher.shutdown();
+
+		MicroBatcher full = new MicroBatcher(analyzer, 8, 10, 1, 1, LoadShedder.Policy.DROP_NEWEST, 0.5);
+		full.submit("queued");
+		assertTrue(full.submit("rejected").isCancelled());
+		full.shutdown();
+	}
+}
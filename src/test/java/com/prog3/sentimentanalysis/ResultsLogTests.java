@@ -0,0 +1,88 @@
+package com.prog3.sentimentanalysis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResultsLogTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void countsTheSentimentsOfEveryProductAndTopic() throws IOException {
+		try (ResultsLog log = new ResultsLog(directory, List.of("music", "toys"), 4096)) {
+			log.append(0, new JsonParser.Review("Great", "B000000001", "A1", 5, 1456185600), "Positive");
+			log.append(0, new JsonParser.Review("Great too", "B000000001", "A2", 4, 1456185601), "Positive");
+			log.append(1, new JsonParser.Review("Awful", "B000000001", "A3", 1, 1456185602), "Very negative");
+			log.append(1, new JsonParser.Review("Fine", "toy-without-usual-asin", "A4", 3, 0), "Neutral");
+
+			ResultsLog.Distribution product = log.productDistribution("B000000001");
+			assertEquals(2, product.count("Positive"));
+			assertEquals(1, product.count("Very negative"));
+			assertEquals(3, product.total());
+			assertEquals(1, log.productDistribution("toy-without-usual-asin").count("Neutral"));
+			assertNull(log.productDistribution("B000000002"));
+			assertEquals(2, log.topicDistribution("toys").total());
+			assertEquals(2, log.getProducts());
+			assertEquals(4, log.getRecords());
+		}
+		// Every field of a record is read back from the segment
+		List<ResultsLog.Result> results = new ArrayList<>();
+		ResultsLog.scan(directory, results::add);
+		assertEquals(4, results.size());
+		assertEquals(new ResultsLog.Result("toys", "B000000001", "A3", 1456185602, "Very negative", 1.0), results.get(2));
+	}
+
+	@Test
+	void reopeningLoadsTheSnapshotAndTheResultsAfterIt() throws IOException {
+		ResultsLog log = new ResultsLog(directory, List.of("music"), 4096);
+		log.append(0, new JsonParser.Review("Great", "B000000001", "A1", 5, 0), "Positive");
+		log.snapshot();
+		// Logged after the snapshot, only found by reading the segment
+		log.append(0, new JsonParser.Review("Bad", "B000000001", "A2", 2, 0), "Negative");
+		log.append(0, new JsonParser.Review("No rating", null, "A3", Double.NaN, 0), null);
+
+		ResultsLog reopened = new ResultsLog(directory, List.of("music", "sport"), 4096);
+		ResultsLog.Distribution product = reopened.productDistribution("B000000001");
+		assertEquals(1, product.count("Positive"));
+		assertEquals(1, product.count("Negative"));
+		assertEquals(3, reopened.topicDistribution("music").total());
+		assertEquals(3, reopened.getRecords());
+		reopened.append(1, new JsonParser.Review("Good", "B000000001", "A4", 4, 0), "Positive");
+		assertEquals(2, reopened.productDistribution("B000000001").count("Positive"));
+		reopened.close();
+		log.close();
+	}
+
+	@Test
+	void fullSegmentsAreFollowedByNewOnes() throws IOException {
+		int reviews = 1000;
+		try (ResultsLog log = new ResultsLog(directory, List.of("music"), 4096)) {
+			for (int i = 0; i < reviews; i++) {
+				log.append(0, new JsonParser.Review("Text", String.format("B%09d", i % 10), "A" + i, 5, i), "Positive");
+			}
+			assertTrue(log.toString().contains("segment"));
+			assertNotEquals(-1, log.toString().indexOf(reviews + " reviews"));
+		}
+		List<ResultsLog.Result> results = new ArrayList<>();
+		ResultsLog.scan(directory, results::add);
+		assertEquals(reviews, results.size());
+		for (int i = 0; i < reviews; i++) {
+			assertEquals("A" + i, results.get(i).reviewerID());
+			assertEquals(i, results.get(i).unixReviewTime());
+		}
+		try (ResultsLog reopened = new ResultsLog(directory, List.of("music"), 4096)) {
+			assertEquals(reviews / 10, reopened.productDistribution("B000000003").total());
+		}
+	}
+}
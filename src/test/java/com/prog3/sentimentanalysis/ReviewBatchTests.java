@@ -0,0 +1,57 @@
+package com.prog3.sentimentanalysis;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ReviewBatchTests {
+
+	@Test
+	void reviewsOfAnyLengthArriveWhole() {
+		char[] longText = new char[20_000];
+		Arrays.fill(longText, 'a');
+		List<String> reviews = List.of("Great album", "", "Écoute très agréable 🎵", new String(longText) + " end");
+		ReviewBatch.Writer writer = new ReviewBatch.Writer(64);
+		writer.begin(7, 120);
+		for (String review : reviews) {
+			writer.add(review);
+		}
+		int length = writer.finish();
+
+		ReviewBatch.Batch batch = ReviewBatch.decode(writer.getBuffer(), length);
+		assertEquals(7, batch.batchSequence());
+		assertEquals(120, batch.firstReviewSequence());
+		assertEquals(reviews, batch.reviews());
+	}
+
+	@Test
+	void writerIsReusedForTheNextBatch() {
+		ReviewBatch.Writer writer = new ReviewBatch.Writer(1024);
+		writer.begin(0, 0);
+		writer.add("first");
+		writer.add("second");
+		writer.finish();
+		writer.begin(1, 2);
+		writer.add("third");
+		int length = writer.finish();
+
+		ReviewBatch.Batch batch = ReviewBatch.decode(writer.getBuffer(), length);
+		assertEquals(1, batch.batchSequence());
+		assertEquals(List.of("third"), batch.reviews());
+		assertEquals(1024, writer.getCapacity());
+	}
+
+	@Test
+	void truncatedOrForeignMessagesAreRejected() {
+		ReviewBatch.Writer writer = new ReviewBatch.Writer(256);
+		writer.begin(0, 0);
+		writer.add("A review that will be cut off");
+		int length = writer.finish();
+		assertThrows(IllegalArgumentException.class, () -> ReviewBatch.decode(writer.getBuffer(), length - 5));
+		assertThrows(IllegalArgumentException.class, () -> ReviewBatch.decode("Not a batch of reviews".getBytes(), 22));
+	}
+}
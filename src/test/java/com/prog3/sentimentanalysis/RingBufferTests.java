@@ -0,0 +1,80 @@
+package com.prog3.sentimentanalysis;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RingBufferTests {
+
+	@Test
+	void keepsOrderAndRejectsWhenFull() {
+		RingBuffer<Integer> ring = new RingBuffer<>(3, RingBuffer.WaitStrategy.BUSY_SPIN);
+		assertEquals(4, ring.capacity());
+		for (int i = 0; i < 4; i++) {
+			assertTrue(ring.offer(i));
+		}
+		assertFalse(ring.offer(4));
+		assertEquals(4, ring.size());
+		for (int i = 0; i < 4; i++) {
+			assertEquals(i, ring.poll());
+		}
+		assertNull(ring.poll());
+	}
+
+	@Test
+	void passesEveryItemBetweenSeveralProducersAndConsumers() throws InterruptedException {
+		for (RingBuffer.WaitStrategy strategy : RingBuffer.WaitStrategy.values()) {
+			RingBuffer<Long> ring = new RingBuffer<>(64, strategy);
+			int producers = 3;
+			int consumers = 3;
+			long perProducer = 5_000;
+			AtomicLong sum = new AtomicLong();
+			AtomicLong count = new AtomicLong();
+			List<Thread> threads = new ArrayList<>();
+			for (int p = 0; p < producers; p++) {
+				threads.add(new Thread(() -> {
+					try {
+						for (long i = 1; i <= perProducer; i++) {
+							ring.put(i);
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}));
+			}
+			for (int c = 0; c < consumers; c++) {
+				threads.add(new Thread(() -> {
+					while (count.get() < producers * perProducer) {
+						Long item = ring.poll();
+						if (item != null) {
+							sum.addAndGet(item);
+							count.incrementAndGet();
+						} else {
+							Thread.yield();
+						}
+					}
+				}));
+			}
+			threads.forEach(Thread::start);
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			assertEquals(producers * perProducer, count.get(), strategy.name());
+			assertEquals(producers * perProducer * (perProducer + 1) / 2, sum.get(), strategy.name());
+		}
+	}
+
+	@Test
+	void parsesWaitStrategyNames() {
+		assertEquals(RingBuffer.WaitStrategy.BUSY_SPIN, RingBuffer.WaitStrategy.parse("busy-spin"));
+		assertEquals(RingBuffer.WaitStrategy.BLOCKING, RingBuffer.WaitStrategy.parse("Blocking"));
+	}
+
+}
@@ -0,0 +1,28 @@
+package com.prog3.sentimentanalysis;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SentenceParallelAnalyzerTests {
+
+	@Test
+	void classWithTheMostTokensWins() {
+		// A long negative sentence outweighs two short positive ones
+		assertEquals("Negative", SentenceParallelAnalyzer.winner(new double[] {0, 12, 0, 10, 0}));
+		assertEquals("Very positive", SentenceParallelAnalyzer.winner(new double[] {3, 0, 4, 0, 9}));
+		assertEquals("Neutral", SentenceParallelAnalyzer.winner(new double[] {0, 2, 7, 5, 0}));
+	}
+
+	@Test
+	void tieBetweenClassesIsNeutral() {
+		assertEquals("Neutral", SentenceParallelAnalyzer.winner(new double[] {0, 8, 0, 8, 0}));
+		assertEquals("Neutral", SentenceParallelAnalyzer.winner(new double[] {6, 0, 0, 3, 6}));
+		assertEquals("Very negative", SentenceParallelAnalyzer.winner(new double[] {6, 0, 0, 3, 5}));
+	}
+
+	@Test
+	void reviewWithoutScoredSentencesIsNeutral() {
+		assertEquals("Neutral", SentenceParallelAnalyzer.winner(new double[5]));
+	}
+}
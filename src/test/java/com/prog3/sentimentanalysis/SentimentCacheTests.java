@@ -0,0 +1,46 @@
+package com.prog3.sentimentanalysis;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SentimentCacheTests {
+
+	@Test
+	void normalizedTextsShareAKey() {
+		assertEquals(SentimentCache.key("Great product!"), SentimentCache.key("  great   PRODUCT!\n"));
+		assertNotEquals(SentimentCache.key("Great product!"), SentimentCache.key("Great products!"));
+	}
+
+	@Test
+	void countsHitsAndMisses() {
+		SentimentCache cache = new SentimentCache(1024 * 1024);
+		assertNull(cache.get("Great product!"));
+		cache.put("Great product!", "Positive");
+		assertEquals("Positive", cache.get("great product!"));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(0.5, cache.getHitRate());
+	}
+
+	@Test
+	void staysWithinBudgetAndKeepsFrequentReviews() {
+		SentimentCache cache = new SentimentCache(SentimentCache.ENTRY_BYTES * 64L);
+		for (int i = 0; i < 5; i++) {
+			cache.get("Great product!");
+		}
+		cache.put("Great product!", "Positive");
+		for (int i = 0; i < 10_000; i++) {
+			String review = "Review number " + i;
+			cache.get(review);
+			cache.put(review, "Neutral");
+			cache.get("Great product!");
+		}
+		assertTrue(cache.size() <= cache.getMaxEntries());
+		assertEquals("Positive", cache.get("Great product!"));
+	}
+
+}
@@ -0,0 +1,320 @@
+package com.prog3.sentimentanalysis;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SocketTransportTests {
+
+	// Records what the coordinator reports, in the order it happened
+	private final LinkedBlockingQueue<String> events = new LinkedBlockingQueue<>();
+	// Credit of the workers as the master sees it
+	private final CreditScheduler credits = new CreditScheduler(2);
+	private final DistributedMaster.WorkerEvents recorder = new DistributedMaster.WorkerEvents() {
+		@Override
+		public void addCredit(int worker, int reviews) {
+			credits.addCredit(worker, reviews);
+			events.add("credit " + worker + " " + reviews);
+		}
+
+		@Override
+		public void recordStats(int worker, long[] report) {
+			events.add("stats " + worker + " " + report[0] + " " + report.length);
+		}
+
+		@Override
+		public void workerJoined(int worker, boolean restarted) {
+			events.add("joined " + worker + " " + restarted);
+		}
+
+		@Override
+		public void workerLeft(int worker) {
+			credits.removeWorker(worker);
+			events.add("left " + worker);
+		}
+	};
+	private SocketCoordinator coordinator;
+	private final Deque<SocketWorkerLink> links = new ArrayDeque<>();
+
+	@AfterEach
+	void close() {
+		links.forEach(SocketWorkerLink::close);
+		if (coordinator != null) {
+			coordinator.close();
+		}
+	}
+
+	@Test
+	void batchArrivesWholeAndCreditComesBack() throws Exception {
+		SocketWorkerLink link = connect();
+		link.sendCredit(8);
+		assertEquals("joined 1 true", next());
+		assertEquals("credit 1 8", next());
+
+		List<String> reviews = List.of("Great album", "Écoute très agréable 🎵", "x".repeat(100_000));
+		ReviewBatch.Writer writer = coordinator.newWriter();
+		writer.begin(0, 40);
+		reviews.forEach(writer::add);
+		assertTrue(coordinator.send(1, writer, writer.finish()));
+		ReviewBatch.Batch batch = link.receive();
+		assertEquals(40, batch.firstReviewSequence());
+		assertEquals(reviews, batch.reviews());
+
+		link.sendCredit(3);
+		assertEquals("credit 1 3", next());
+		Deque<ReviewBatch.Writer> freeWriters = new ArrayDeque<>();
+		coordinator.reclaim(freeWriters);
+		assertEquals(List.of(writer), List.copyOf(freeWriters));
+	}
+
+	@Test
+	void statisticsOfTheWorkerArrive() throws Exception {
+		SocketWorkerLink link = connect();
+		assertEquals("joined 1 true", next());
+		// Statistics are only sent once the worker was welcomed
+		while (link.getWorkerNumber() == 0) {
+			Thread.sleep(10);
+		}
+		long[] report = new long[WorkerStatsAggregator.reportLength()];
+		WorkerStatsAggregator.fillReport(report, 5, 1000, 12, new long[PipelineMetrics.sentimentClassCount()]);
+		link.sendStats(report);
+		assertEquals("stats 1 5 " + report.length, next());
+	}
+
+	@Test
+	void workerThatLeavesFreesItsNumber() throws Exception {
+		coordinator = new SocketCoordinator(0, 2, 5000);
+		coordinator.start(recorder);
+		SocketWorkerLink first = link();
+		assertEquals("joined 1 true", next());
+		link();
+		assertEquals("joined 2 true", next());
+		first.close();
+		assertEquals("left 1", next());
+		assertFalse(coordinator.send(1, coordinator.newWriter(), 0));
+		// A new process takes the number of the worker that went away
+		link();
+		assertEquals("joined 1 true", next());
+	}
+
+	@Test
+	void reconnectedWorkerKeepsItsNumberAndItsCredit() throws Exception {
+		coordinator = new SocketCoordinator(0, 1, 5000);
+		coordinator.start(recorder);
+		try (Relay relay = new Relay(coordinator.getPort())) {
+			SocketWorkerLink link = new SocketWorkerLink("localhost", relay.getPort(), 5000, 5000);
+			links.add(link);
+			link.start();
+			link.sendCredit(8);
+			assertEquals("joined 1 true", next());
+			assertEquals("credit 1 8", next());
+			sendBatch(1, 0, 3);
+			assertEquals(3, link.receive().reviews().size());
+
+			// The coordinator counts the 3 reviews as lost, the worker comes back with the same number and its full capacity
+			relay.drop();
+			assertEquals("left 1", next());
+			assertEquals("joined 1 false", next());
+			assertEquals("credit 1 8", next());
+			assertEquals(8, credits.getCredit(1));
+
+			// Credit for the reviews of the old connection is never sent, so the credit stays within the capacity
+			link.sendCredit(3);
+			sendBatch(1, 1, 2);
+			assertEquals(2, link.receive().reviews().size());
+			link.sendCredit(2);
+			assertEquals("credit 1 2", next());
+			assertEquals(8, credits.getCredit(1));
+			assertEquals(0, credits.getInFlight());
+		}
+	}
+
+	@Test
+	void silentWorkerIsDroppedAfterTheTimeout() throws Exception {
+		coordinator = new SocketCoordinator(0, 1, 500);
+		coordinator.start(recorder);
+		try (Socket silent = new Socket("localhost", coordinator.getPort())) {
+			// Says hello and then nothing, not even heartbeats
+			sendFrame(silent, FrameChannel.HELLO, ByteBuffer.allocate(Long.BYTES).putLong(7).array());
+			assertEquals("joined 1 true", next());
+			assertEquals("left 1", next());
+		}
+	}
+
+	@Test
+	void corruptFrameOnlyDropsItsConnection() throws Exception {
+		coordinator = new SocketCoordinator(0, 2, 5000);
+		coordinator.start(recorder);
+		try (Socket shortHello = new Socket("localhost", coordinator.getPort());
+			 Socket shortCredit = new Socket("localhost", coordinator.getPort())) {
+			// A hello without its session id is dropped before it gets a number
+			sendFrame(shortHello, FrameChannel.HELLO, new byte[2]);
+			sendFrame(shortCredit, FrameChannel.HELLO, ByteBuffer.allocate(Long.BYTES).putLong(7).array());
+			assertEquals("joined 1 true", next());
+			sendFrame(shortCredit, FrameChannel.CREDIT, new byte[1]);
+			assertEquals("left 1", next());
+		}
+		// The coordinator still accepts workers
+		link();
+		assertEquals("joined 2 true", next());
+	}
+
+	@Test
+	void corruptBatchMakesTheWorkerConnectAgain() throws Exception {
+		try (ServerSocket fakeCoordinator = new ServerSocket(0)) {
+			fakeCoordinator.setSoTimeout(5000);
+			SocketWorkerLink link = new SocketWorkerLink("localhost", fakeCoordinator.getLocalPort(), 5000, 500);
+			links.add(link);
+			link.start();
+			long session;
+			try (Socket connection = fakeCoordinator.accept()) {
+				session = readHello(connection);
+				sendFrame(connection, FrameChannel.WELCOME, ByteBuffer.allocate(Integer.BYTES).putInt(1).array());
+				sendFrame(connection, FrameChannel.BATCH, ByteBuffer.allocate(Integer.BYTES).putInt(7).array());
+				try (Socket again = fakeCoordinator.accept()) {
+					assertEquals(session, readHello(again));
+				}
+			}
+			fakeCoordinator.close();
+			// Once the coordinator cannot be reached anymore the worker stops waiting for batches
+			CompletableFuture<ReviewBatch.Batch> received = CompletableFuture.supplyAsync(() -> {
+				try {
+					return link.receive();
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+			});
+			assertNull(received.get(5, TimeUnit.SECONDS));
+		}
+	}
+
+	private SocketWorkerLink connect() throws IOException {
+		coordinator = new SocketCoordinator(0, 1, 5000);
+		coordinator.start(recorder);
+		return link();
+	}
+
+	private SocketWorkerLink link() {
+		SocketWorkerLink link = new SocketWorkerLink("localhost", coordinator.getPort(), 5000, 5000);
+		links.add(link);
+		link.start();
+		return link;
+	}
+
+	// Take the credit of a batch of reviews and send it, as the dispatcher does
+	private void sendBatch(int worker, long batchSequence, int reviews) throws InterruptedException {
+		CreditScheduler.Grant grant = credits.acquire(reviews);
+		assertEquals(reviews, grant.reviews());
+		ReviewBatch.Writer writer = coordinator.newWriter();
+		writer.begin(batchSequence, 0);
+		for (int i = 0; i < reviews; i++) {
+			writer.add("Review " + i);
+		}
+		assertTrue(coordinator.send(worker, writer, writer.finish()));
+		assertTrue(credits.release(grant, reviews));
+	}
+
+	// Write a frame as the other side of a connection would: its length, its type and the payload
+	private static void sendFrame(Socket socket, byte type, byte[] payload) throws IOException {
+		DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+		output.writeInt(1 + payload.length);
+		output.writeByte(type);
+		output.write(payload);
+		output.flush();
+	}
+
+	// Read the hello of a worker, returns its session id
+	private static long readHello(Socket socket) throws IOException {
+		DataInputStream input = new DataInputStream(socket.getInputStream());
+		assertEquals(1 + Long.BYTES, input.readInt());
+		assertEquals(FrameChannel.HELLO, input.readByte());
+		return input.readLong();
+	}
+
+	private String next() throws InterruptedException {
+		String event = events.poll(5, TimeUnit.SECONDS);
+		return event == null ? "nothing" : event;
+	}
+
+	/**
+	 *  Forwards the connections of the workers to the coordinator, and can cut them all at once.
+	* */
+	private static final class Relay implements AutoCloseable {
+		private final ServerSocket server = new ServerSocket(0);
+		private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+
+		private Relay(int coordinatorPort) throws IOException {
+			Thread acceptor = new Thread(() -> {
+				try {
+					while (true) {
+						Socket worker = server.accept();
+						Socket coordinator = new Socket("localhost", coordinatorPort);
+						sockets.add(worker);
+						sockets.add(coordinator);
+						forward(worker, coordinator);
+						forward(coordinator, worker);
+					}
+				} catch (IOException e) {
+					// Relay closed
+				}
+			}, "relay");
+			acceptor.setDaemon(true);
+			acceptor.start();
+		}
+
+		private int getPort() {
+			return server.getLocalPort();
+		}
+
+		// Close every connection, both ends see it closed
+		private void drop() throws IOException {
+			for (Socket socket : sockets) {
+				socket.close();
+			}
+			sockets.clear();
+		}
+
+		@Override
+		public void close() throws IOException {
+			server.close();
+			drop();
+		}
+
+		private static void forward(Socket from, Socket to) {
+			Thread thread = new Thread(() -> {
+				try {
+					from.getInputStream().transferTo(to.getOutputStream());
+				} catch (IOException e) {
+					// Dropped
+				} finally {
+					try {
+						from.close();
+						to.close();
+					} catch (IOException e) {
+						// Closed anyway
+					}
+				}
+			}, "relay-forward");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+}
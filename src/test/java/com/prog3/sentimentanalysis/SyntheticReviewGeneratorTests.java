@@ -0,0 +1,44 @@
+package com.prog3.sentimentanalysis;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SyntheticReviewGeneratorTests {
+
+	@Test
+	void messagesAreParsedLikeServerMessages() {
+		SyntheticReviewGenerator generator = new SyntheticReviewGenerator(1);
+		for (int i = 0; i < 100; i++) {
+			String message = SyntheticReviewGenerator.toMessage("music", generator.nextReviewJson(40));
+			JsonParser.Review review = JsonParser.extractReview(message, "music");
+			assertEquals(40, review.reviewText().split(" ").length);
+			assertTrue(review.overall() >= 1 && review.overall() <= 5);
+		}
+	}
+
+	@Test
+	void wordCountsStayWithinTheMaximum() {
+		SyntheticReviewGenerator generator = new SyntheticReviewGenerator(2);
+		for (SyntheticReviewGenerator.LengthDistribution distribution : SyntheticReviewGenerator.LengthDistribution.values()) {
+			long total = 0;
+			for (int i = 0; i < 10_000; i++) {
+				int words = generator.nextWordCount(distribution, 60, 300);
+				assertTrue(words >= 1 && words <= 300);
+				total += words;
+			}
+			// The mean is close to the requested one, the cut at the maximum lowers it a little
+			assertEquals(60, total / 10_000.0, 6);
+		}
+	}
+
+	@Test
+	void loadProfileRampsAndBursts() {
+		LoadGeneratorServer.LoadProfile profile = new LoadGeneratorServer.LoadProfile(100, 20, 10, 30, 500, 4);
+		assertEquals(60, profile.rateAt(5), 1e-9);
+		assertEquals(100, profile.rateAt(20), 1e-9);
+		assertEquals(400, profile.rateAt(30.2), 1e-9);
+		assertEquals(100, profile.rateAt(30.6), 1e-9);
+	}
+}
@@ -0,0 +1,60 @@
+package com.prog3.sentimentanalysis;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class WeightedFairQueueTests {
+
+	@Test
+	void busyLanesShareByWeight() throws InterruptedException {
+		WeightedFairQueue<String> queue = new WeightedFairQueue<>(WeightedFairQueue.Lane.parseList("music:3,toys"), 100);
+		for (int i = 0; i < 100; i++) {
+			queue.lane(0).put("music");
+			queue.lane(1).put("toys");
+		}
+		int music = 0;
+		for (int i = 0; i < 40; i++) {
+			if (queue.take().equals("music")) {
+				music++;
+			}
+		}
+		assertEquals(30, music);
+		assertEquals(160, queue.size());
+	}
+
+	@Test
+	void idleLaneDoesNotSaveUpItsShare() throws InterruptedException {
+		WeightedFairQueue<String> queue = new WeightedFairQueue<>(WeightedFairQueue.Lane.parseList("music,toys"), 100);
+		for (int i = 0; i < 50; i++) {
+			queue.lane(0).put("music");
+		}
+		List<String> taken = new ArrayList<>();
+		queue.drainTo(taken, 40);
+		// Toys was idle while music was served alone, from now on they alternate
+		for (int i = 0; i < 10; i++) {
+			queue.lane(1).put("toys");
+		}
+		taken.clear();
+		queue.drainTo(taken, 10);
+		assertEquals(5, taken.stream().filter("toys"::equals).count());
+	}
+
+	@Test
+	void everyLaneIsBoundedOnItsOwn() throws InterruptedException {
+		WeightedFairQueue<String> queue = new WeightedFairQueue<>(WeightedFairQueue.Lane.parseList("music,toys"), 2);
+		LoadShedder<String> shedder = new LoadShedder<>(LoadShedder.Policy.DROP_NEWEST, 1);
+		shedder.submit(queue.lane(0), "a");
+		shedder.submit(queue.lane(0), "b");
+		assertFalse(shedder.submit(queue.lane(0), "c"));
+		shedder.submit(queue.lane(1), "d");
+		assertEquals(3, queue.size());
+		assertEquals(1, shedder.takeDropped());
+		assertThrows(IllegalArgumentException.class, () -> WeightedFairQueue.Lane.parseList("music:0"));
+	}
+}
@@ -0,0 +1,61 @@
+package com.prog3.sentimentanalysis;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WorkerStatsAggregatorTests {
+
+	@Test
+	void secondsAreInterpolatedOnTheMastersClock() {
+		WorkerStatsAggregator aggregator = new WorkerStatsAggregator(1, 5000);
+		// The worker's clock is 5005 ms behind, the reports arrive with some delay
+		aggregator.record(1, report(0, 0, 0), 5010);
+		aggregator.record(1, report(1, 1000, 100), 6005);
+		aggregator.record(1, report(2, 2000, 300), 7020);
+		assertEquals(50, aggregator.takeSecond(5505, 7100).reviews());
+		assertEquals(150, aggregator.takeSecond(6505, 7100).reviews());
+		assertEquals(100, aggregator.takeSecond(7505, 7600).reviews());
+		assertEquals(0, aggregator.takeSecond(8505, 8600).reviews());
+	}
+
+	@Test
+	void lateAndLostReportsLoseNoCounts() {
+		WorkerStatsAggregator aggregator = new WorkerStatsAggregator(2, 5000);
+		aggregator.record(1, report(0, 0, 0), 0);
+		aggregator.record(2, report(0, 0, 0), 0);
+		aggregator.record(1, report(3, 3000, 90), 3000);
+		// An older report that arrives after a newer one is ignored
+		aggregator.record(1, report(2, 2000, 60), 3001);
+		aggregator.record(2, report(1, 1000, 10), 1000);
+		long total = 0;
+		for (long boundary = 1000; boundary <= 4000; boundary += 1000) {
+			total += aggregator.takeSecond(boundary, boundary).reviews();
+		}
+		assertEquals(100, total);
+	}
+
+	@Test
+	void silentWorkersAreReportedAsStalled() {
+		WorkerStatsAggregator aggregator = new WorkerStatsAggregator(3, 2000);
+		aggregator.record(1, report(0, 0, 0), 0);
+		aggregator.record(2, report(0, 0, 0), 0);
+		aggregator.record(1, report(1, 3000, 30), 3000);
+		WorkerStatsAggregator.Second second = aggregator.takeSecond(3000, 3000);
+		// Worker 3 has not reported yet, it may still be loading its models
+		assertEquals(List.of(2), second.stalled());
+		assertEquals(30, second.reviews());
+		assertEquals(30, second.sentimentCounts()[2]);
+	}
+
+	// Report with every review in the neutral class
+	private static long[] report(long sequence, long workerMillis, long analyzed) {
+		long[] sentimentTotals = new long[PipelineMetrics.sentimentClassCount()];
+		sentimentTotals[2] = analyzed;
+		long[] report = new long[WorkerStatsAggregator.reportLength()];
+		WorkerStatsAggregator.fillReport(report, sequence, workerMillis, analyzed, sentimentTotals);
+		return report;
+	}
+}